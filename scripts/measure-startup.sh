@@ -0,0 +1,64 @@
+#!/usr/bin/env bash
+# Measures how long a fresh instance takes until /actuator/health/readiness is UP, and the latency of the first
+# upload and the first fragment request after that.
+#
+# usage: scripts/measure-startup.sh <fat|fast-startup> <image> [application arguments...]
+#   fat           target/Puzzles-*.jar built by mvn package
+#   fast-startup  target/fast-startup built by mvn -P fast-startup verify (AOT and class data sharing)
+# environment: JAVA (default java), PORT (default 18090), RUNS (default 5, the medians are taken over all of them)
+set -euo pipefail
+
+MODE=${1:?mode fat or fast-startup}
+IMAGE=${2:?image to upload}
+shift 2
+JAVA=${JAVA:-java}
+PORT=${PORT:-18090}
+RUNS=${RUNS:-5}
+cd "$(dirname "$0")/.."
+
+case "$MODE" in
+  fat)
+    COMMAND=("$JAVA" --enable-preview -jar "$(ls target/Puzzles-*-SNAPSHOT.jar | head -1)") ;;
+  fast-startup)
+    COMMAND=("$JAVA" --enable-preview -XX:SharedArchiveFile=target/fast-startup/application.jsa
+      -Dspring.aot.enabled=true -jar "$(ls target/fast-startup/Puzzles-*-fast-startup.jar | head -1)") ;;
+  *)
+    echo "unknown mode $MODE" >&2
+    exit 1 ;;
+esac
+
+millis() {
+  echo $(($(date +%s%N) / 1000000))
+}
+
+WORK=$(mktemp -d)
+trap 'kill $PID 2>/dev/null || true; rm -rf "$WORK"' EXIT
+echo "run ready_ms upload_ms fragment_ms"
+for run in $(seq 1 "$RUNS"); do
+  rm -rf "$WORK/puzzles" "$WORK/cookies"
+  start=$(millis)
+  "${COMMAND[@]}" --server.port="$PORT" --puzzle.path-to-puzzle-images-directory="$WORK/puzzles/" "$@" \
+    > "$WORK/application.log" 2>&1 &
+  PID=$!
+  until curl -sf -o /dev/null "localhost:$PORT/actuator/health/readiness"; do
+    if ! kill -0 $PID 2>/dev/null; then
+      cat "$WORK/application.log" >&2
+      exit 1
+    fi
+    sleep 0.05
+  done
+  ready=$(($(millis) - start))
+  curl -s -c "$WORK/cookies" -b "$WORK/cookies" -o /dev/null -w '%{time_total}\n' \
+    -F image=@"$IMAGE" "localhost:$PORT/api/puzzles/upload" > "$WORK/upload"
+  curl -s -c "$WORK/cookies" -b "$WORK/cookies" -o /dev/null -w '%{time_total}\n' \
+    "localhost:$PORT/api/puzzles/0/image" > "$WORK/fragment"
+  upload=$(awk '{ printf "%d", $1 * 1000 }' "$WORK/upload")
+  fragment=$(awk '{ printf "%d", $1 * 1000 }' "$WORK/fragment")
+  echo "$run $ready $upload $fragment" | tee -a "$WORK/results"
+  kill $PID
+  wait $PID 2>/dev/null || true
+done
+for column in 2 3 4; do
+  sort -n -k $column "$WORK/results" | awk -v column=$column '{ values[NR] = $column }
+    END { printf "%s ", values[int((NR + 1) / 2)] }'
+done | awk '{ print "median " $0 }'
@@ -0,0 +1,90 @@
+package com.projects.puzzles.benchmark;
+
+import com.projects.puzzles.PuzzlesApplication;
+import lombok.SneakyThrows;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.util.FileSystemUtils;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Non-web application context working on a temporary images directory, plus the synthetic
+ * pictures the benchmarks cut into puzzles.
+ */
+public final class BenchmarkContext implements AutoCloseable {
+    private final Path imagesDirectory;
+    private final ConfigurableApplicationContext applicationContext;
+
+    @SneakyThrows
+    public BenchmarkContext(int columns, int rows, String... properties) {
+        this.imagesDirectory = Files.createTempDirectory("puzzle-benchmark");
+        String[] arguments = Stream.concat(Stream.of(
+                        "puzzle.num-puzzles-x=" + columns,
+                        "puzzle.num-puzzles-y=" + rows,
+                        "puzzle.path-to-puzzle-images-directory=" + imagesDirectory + "/",
+                        "puzzle.session-store=MEMORY",
+                        "logging.level.root=WARN"), Stream.of(properties))
+                .map(property -> "--" + property)
+                .toArray(String[]::new);
+        // command line arguments, default properties would lose against application.yaml
+        this.applicationContext = new SpringApplicationBuilder(PuzzlesApplication.class)
+                .web(WebApplicationType.NONE)
+                .run(arguments);
+    }
+
+    // Smooth gradients with scattered shapes, so that neighbouring edges look alike and others do not
+    public static BufferedImage createImage(int width, int height, long seed) {
+        Random random = new Random(seed);
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            graphics.setPaint(new GradientPaint(0, 0, randomColor(random), width, height, randomColor(random)));
+            graphics.fillRect(0, 0, width, height);
+            int shapes = Math.max(16, width * height / 20_000);
+            for (int i = 0; i < shapes; i++) {
+                graphics.setColor(randomColor(random));
+                int size = 10 + random.nextInt(Math.max(1, Math.min(width, height) / 4));
+                graphics.fillOval(random.nextInt(width), random.nextInt(height), size, size * (1 + random.nextInt(3)));
+            }
+        } finally {
+            graphics.dispose();
+        }
+        return image;
+    }
+
+    @SneakyThrows
+    public static MockMultipartFile createUpload(int width, int height, long seed) {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        ImageIO.write(createImage(width, height, seed), "jpg", outputStream);
+        return new MockMultipartFile("image", "benchmark.jpg", "image/jpeg", outputStream.toByteArray());
+    }
+
+    private static Color randomColor(Random random) {
+        return new Color(random.nextInt(256), random.nextInt(256), random.nextInt(256));
+    }
+
+    public <T> T getBean(Class<T> type) {
+        return applicationContext.getBean(type);
+    }
+
+    @Override
+    @SneakyThrows
+    public void close() {
+        applicationContext.close();
+        FileSystemUtils.deleteRecursively(imagesDirectory);
+    }
+}
@@ -0,0 +1,60 @@
+package com.projects.puzzles.benchmark;
+
+import com.projects.puzzles.dto.PuzzleCheckDto;
+import com.projects.puzzles.dto.UploadDto;
+import com.projects.puzzles.service.PuzzleService;
+import com.projects.puzzles.utility.CheckMode;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CheckBenchmark {
+    @Param({"4", "10", "25", "50"})
+    private int grid;
+
+    @Param({"EXACT", "VISUAL"})
+    private CheckMode mode;
+
+    private BenchmarkContext benchmarkContext;
+    private PuzzleService puzzleService;
+    private UUID userId;
+    private List<PuzzleCheckDto> solvedBoard;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        benchmarkContext = new BenchmarkContext(grid, grid);
+        puzzleService = benchmarkContext.getBean(PuzzleService.class);
+        userId = UUID.randomUUID();
+        puzzleService.divideIntoPuzzles(userId, BenchmarkContext.createUpload(2000, 2000, 42),
+                UploadDto.builder().build());
+        // the assembled board is checked, so both modes walk the whole board
+        solvedBoard = puzzleService.assemblePuzzles(userId, false).stream()
+                .map(puzzleDto -> PuzzleCheckDto.builder()
+                        .id(puzzleDto.id())
+                        .x(puzzleDto.x())
+                        .y(puzzleDto.y())
+                        .width(puzzleDto.width())
+                        .height(puzzleDto.height())
+                        .build())
+                .toList();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        benchmarkContext.close();
+    }
+
+    @Benchmark
+    public boolean checkPuzzles() {
+        return puzzleService.checkPuzzles(userId, new ArrayList<>(solvedBoard), mode, false);
+    }
+}
@@ -0,0 +1,72 @@
+package com.projects.puzzles.benchmark;
+
+import com.projects.puzzles.service.EdgeComparator;
+import com.projects.puzzles.utility.Adjacent;
+import com.projects.puzzles.utility.EdgeStore;
+import com.projects.puzzles.utility.FragmentEdges;
+import com.projects.puzzles.utility.PuzzleConfig;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EdgeComparatorBenchmark {
+    private static final int GRID = 8;
+    private static final int FRAGMENTS = GRID * GRID;
+
+    @Param({"20", "100", "400"})
+    private int fragmentSide;
+
+    private BenchmarkContext benchmarkContext;
+    private EdgeComparator edgeComparator;
+    private double threshold;
+    private BufferedImage fragment;
+    private EdgeStore edgeStore;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        benchmarkContext = new BenchmarkContext(GRID, GRID);
+        edgeComparator = benchmarkContext.getBean(EdgeComparator.class);
+        threshold = benchmarkContext.getBean(PuzzleConfig.class).meanErrorProbabilityThreshold();
+        BufferedImage image = BenchmarkContext.createImage(fragmentSide * GRID, fragmentSide * GRID, 42);
+        edgeStore = new EdgeStore(FRAGMENTS, fragmentSide, fragmentSide);
+        for (int id = 0; id < FRAGMENTS; id++) {
+            edgeStore.put(id, FragmentEdges.of(image.getSubimage(
+                    id % GRID * fragmentSide, id / GRID * fragmentSide, fragmentSide, fragmentSide)));
+        }
+        fragment = image.getSubimage(0, 0, fragmentSide, fragmentSide);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        benchmarkContext.close();
+    }
+
+    @Benchmark
+    public FragmentEdges edgeExtraction() {
+        return FragmentEdges.of(fragment);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FRAGMENTS - 1)
+    public void meanDiff(Blackhole blackhole) {
+        for (int other = 1; other < FRAGMENTS; other++) {
+            blackhole.consume(edgeComparator.getMeanDiff(edgeStore, 0, Adjacent.RIGHT, other));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FRAGMENTS - 1)
+    public void isMatching(Blackhole blackhole) {
+        for (int other = 1; other < FRAGMENTS; other++) {
+            blackhole.consume(edgeComparator.isMatching(edgeStore, 0, Adjacent.RIGHT, other, threshold));
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.projects.puzzles.benchmark;
+
+import com.projects.puzzles.dto.PuzzleDto;
+import com.projects.puzzles.dto.UploadDto;
+import com.projects.puzzles.model.FragmentContent;
+import com.projects.puzzles.service.FragmentContentStore;
+import com.projects.puzzles.service.PuzzleService;
+import com.projects.puzzles.service.PuzzleSessionStore;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class SolverBenchmark {
+    @Param({"4", "10", "25", "50"})
+    private int grid;
+
+    @Param({"2000"})
+    private int imageSide;
+
+    // 0 scores every pair of fragments
+    @Param({"0", "16"})
+    private int candidatesPerSide;
+
+    private BenchmarkContext benchmarkContext;
+    private PuzzleService puzzleService;
+    private UUID userId;
+    private FragmentContent content;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        benchmarkContext = new BenchmarkContext(grid, grid, "puzzle.candidates-per-side=" + candidatesPerSide);
+        puzzleService = benchmarkContext.getBean(PuzzleService.class);
+        userId = UUID.randomUUID();
+        puzzleService.divideIntoPuzzles(userId, BenchmarkContext.createUpload(imageSide, imageSide, 42),
+                UploadDto.builder().build());
+        content = benchmarkContext.getBean(FragmentContentStore.class)
+                .adopt(benchmarkContext.getBean(PuzzleSessionStore.class).get(userId).orElseThrow());
+    }
+
+    // placements are remembered per content, forget them to run the solver every time
+    @Setup(Level.Invocation)
+    public void forgetPlacements() {
+        content.getPlacements().clear();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        benchmarkContext.close();
+    }
+
+    @Benchmark
+    public List<PuzzleDto> assemblePuzzles() {
+        return puzzleService.assemblePuzzles(userId, false);
+    }
+}
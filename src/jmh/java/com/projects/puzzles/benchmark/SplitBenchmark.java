@@ -0,0 +1,59 @@
+package com.projects.puzzles.benchmark;
+
+import com.projects.puzzles.dto.UploadDto;
+import com.projects.puzzles.service.PuzzleService;
+import com.projects.puzzles.utility.FragmentFormat;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class SplitBenchmark {
+    @Param({"4", "10", "25", "50"})
+    private int grid;
+
+    @Param({"2000x1600", "4000x3000"})
+    private String imageSize;
+
+    @Param({"JPEG", "PNG", "BMP"})
+    private FragmentFormat format;
+
+    private BenchmarkContext benchmarkContext;
+    private PuzzleService puzzleService;
+    private MockMultipartFile upload;
+    private UploadDto uploadDto;
+    private UUID userId;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        String[] size = imageSize.split("x");
+        benchmarkContext = new BenchmarkContext(grid, grid);
+        puzzleService = benchmarkContext.getBean(PuzzleService.class);
+        upload = BenchmarkContext.createUpload(Integer.parseInt(size[0]), Integer.parseInt(size[1]), 42);
+        uploadDto = UploadDto.builder().format(format).build();
+        userId = UUID.randomUUID();
+    }
+
+    // identical uploads share their fragments, so drop them to measure a full split every time
+    @Setup(Level.Invocation)
+    public void reset() {
+        puzzleService.resetPuzzles(userId);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        benchmarkContext.close();
+    }
+
+    @Benchmark
+    public void divideIntoPuzzles() {
+        puzzleService.divideIntoPuzzles(userId, upload, uploadDto);
+    }
+}
@@ -8,11 +8,18 @@ import org.springframework.boot.context.properties.EnableConfigurationProperties
 import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 @Configuration
 @Slf4j
+@EnableScheduling
 @ConfigurationPropertiesScan("com.projects.puzzles.utility")
 @EnableConfigurationProperties(PuzzleConfig.class)
 public class ApplicationConfiguration {
@@ -23,4 +30,23 @@ public class ApplicationConfiguration {
             protocolHandler.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
         };
     }
+
+    @Bean(destroyMethod = "shutdown")
+    ForkJoinPool scoringPool(PuzzleConfig puzzleConfig) {
+        int parallelism = puzzleConfig.scoringParallelism() > 0
+                ? puzzleConfig.scoringParallelism()
+                : Runtime.getRuntime().availableProcessors();
+        log.info("Configuring pair scoring pool with parallelism {}", parallelism);
+        return new ForkJoinPool(parallelism);
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    ThreadPoolExecutor fragmentWriterPool(PuzzleConfig puzzleConfig) {
+        int parallelism = puzzleConfig.writeParallelism() > 0
+                ? puzzleConfig.writeParallelism()
+                : Runtime.getRuntime().availableProcessors();
+        log.info("Configuring fragment writer pool with parallelism {}", parallelism);
+        return new ThreadPoolExecutor(parallelism, parallelism, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), new CustomizableThreadFactory("fragment-writer-"));
+    }
 }
@@ -1,36 +1,66 @@
 package com.projects.puzzles.controller;
 
+import com.projects.puzzles.dto.AssemblyJobDto;
+import com.projects.puzzles.dto.AtlasManifestDto;
+import com.projects.puzzles.dto.MoveDto;
+import com.projects.puzzles.dto.MoveResultDto;
 import com.projects.puzzles.dto.PuzzleCheckDto;
 import com.projects.puzzles.dto.PuzzleDto;
+import com.projects.puzzles.dto.UploadDto;
+import com.projects.puzzles.model.FragmentAtlas;
+import com.projects.puzzles.model.FragmentImage;
+import com.projects.puzzles.service.AssemblyJobService;
+import com.projects.puzzles.service.FragmentAtlasService;
 import com.projects.puzzles.service.PuzzleService;
+import com.projects.puzzles.utility.CheckMode;
+import com.projects.puzzles.utility.FragmentFormat;
+import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 @RestController
 @RequestMapping("/api/puzzles")
 @SessionAttributes("userId")
 public class PuzzleController {
     private final PuzzleService puzzleService;
+    private final AssemblyJobService assemblyJobService;
+    private final FragmentAtlasService fragmentAtlasService;
 
-    public PuzzleController(PuzzleService puzzleService) {
+    public PuzzleController(PuzzleService puzzleService, AssemblyJobService assemblyJobService,
+                            FragmentAtlasService fragmentAtlasService) {
         this.puzzleService = puzzleService;
+        this.assemblyJobService = assemblyJobService;
+        this.fragmentAtlasService = fragmentAtlasService;
     }
 
     @PostMapping("/upload")
     public ResponseEntity<Void> uploadImage(@RequestParam("image") MultipartFile image,
+                                            @RequestParam(value = "columns", required = false) Integer columns,
+                                            @RequestParam(value = "rows", required = false) Integer rows,
+                                            @RequestParam(value = "format", required = false) FragmentFormat format,
+                                            @RequestParam(value = "quality", required = false) Float quality,
                                             Model model,
                                             @SessionAttribute(value = "userId", required = false) UUID userId) {
         if (userId == null) {
             userId = UUID.randomUUID();
             model.addAttribute("userId", userId);
         }
-        puzzleService.divideIntoPuzzles(userId, image);
+        puzzleService.divideIntoPuzzles(userId, image, UploadDto.builder()
+                .columns(columns)
+                .rows(rows)
+                .format(format)
+                .quality(quality)
+                .build());
         return ResponseEntity.ok().build();
     }
 
@@ -40,24 +70,74 @@ public class PuzzleController {
     }
 
     @GetMapping("/{id}/image")
-    public ResponseEntity<byte[]> getPuzzleImage(@PathVariable("id") int id,
-                                                 @SessionAttribute("userId") UUID userId) {
-        return ResponseEntity.ok(puzzleService.getPuzzleImage(userId, id));
+    public ResponseEntity<Resource> getPuzzleImage(@PathVariable("id") int id,
+                                                   @SessionAttribute("userId") UUID userId) {
+        FragmentImage fragmentImage = puzzleService.getPuzzleImage(userId, id);
+        // conditional and range requests are answered by Spring from these headers
+        return ResponseEntity.ok()
+                .eTag(fragmentImage.eTag())
+                .cacheControl(CacheControl.noCache().cachePrivate())
+                .contentType(fragmentImage.mediaType())
+                .contentLength(fragmentImage.contentLength())
+                .body(fragmentImage.resource());
+    }
+
+    @GetMapping("/atlas")
+    public ResponseEntity<Resource> getAtlas(@SessionAttribute("userId") UUID userId) {
+        FragmentAtlas atlas = fragmentAtlasService.getAtlas(userId);
+        // the url carries the atlas version, so a cached copy never goes stale
+        return ResponseEntity.ok()
+                .eTag(atlas.eTag())
+                .cacheControl(CacheControl.maxAge(365, TimeUnit.DAYS).cachePrivate().immutable())
+                .contentType(atlas.format().getMediaType())
+                .contentLength(atlas.contentLength())
+                .body(atlas.image());
+    }
+
+    @GetMapping("/atlas/manifest")
+    public ResponseEntity<AtlasManifestDto> getAtlasManifest(@SessionAttribute("userId") UUID userId) {
+        FragmentAtlas atlas = fragmentAtlasService.getAtlas(userId);
+        return ResponseEntity.ok()
+                .eTag(atlas.eTag())
+                .cacheControl(CacheControl.noCache().cachePrivate())
+                .body(atlas.manifest());
     }
 
     @PostMapping("/check")
     public ResponseEntity<Boolean> checkPuzzles(@SessionAttribute("userId") UUID userId,
-                                                @RequestBody ArrayList<PuzzleCheckDto> puzzleCheckDtos) {
-        return ResponseEntity.ok(puzzleService.checkPuzzles(userId, puzzleCheckDtos));
+                                                @RequestBody ArrayList<PuzzleCheckDto> puzzleCheckDtos,
+                                                @RequestParam(value = "mode", defaultValue = "EXACT") CheckMode mode,
+                                                @RequestParam(value = "trace", defaultValue = "false") boolean trace) {
+        return ResponseEntity.ok(puzzleService.checkPuzzles(userId, puzzleCheckDtos, mode, trace));
+    }
+
+    @PostMapping("/moves")
+    public ResponseEntity<MoveResultDto> movePuzzle(@SessionAttribute("userId") UUID userId,
+                                                    @RequestBody MoveDto moveDto) {
+        return ResponseEntity.ok(puzzleService.movePuzzle(userId, moveDto));
     }
 
     @PostMapping("/assemble")
-    public ResponseEntity<List<PuzzleDto>> assemblePuzzles(@SessionAttribute("userId") UUID userId) {
-        return ResponseEntity.ok(puzzleService.assemblePuzzles(userId));
+    public ResponseEntity<AssemblyJobDto> assemblePuzzles(@SessionAttribute("userId") UUID userId,
+                                                          @RequestParam(value = "trace", defaultValue = "false") boolean trace) {
+        return ResponseEntity.accepted().body(assemblyJobService.submit(userId, trace));
+    }
+
+    @GetMapping("/assemble/{jobId}")
+    public ResponseEntity<AssemblyJobDto> getAssemblyJob(@PathVariable("jobId") UUID jobId,
+                                                         @SessionAttribute("userId") UUID userId) {
+        return ResponseEntity.ok(assemblyJobService.getJob(userId, jobId));
+    }
+
+    @GetMapping(value = "/assemble/{jobId}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter getAssemblyJobEvents(@PathVariable("jobId") UUID jobId,
+                                           @SessionAttribute("userId") UUID userId) {
+        return assemblyJobService.subscribe(userId, jobId);
     }
 
     @PostMapping("/reset")
     public ResponseEntity<Void> resetPuzzles(@SessionAttribute("userId") UUID userId) {
+        assemblyJobService.evict(userId);
         puzzleService.resetPuzzles(userId);
         return ResponseEntity.ok().build();
     }
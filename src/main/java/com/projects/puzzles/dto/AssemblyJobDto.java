@@ -0,0 +1,15 @@
+package com.projects.puzzles.dto;
+
+import com.projects.puzzles.utility.AssemblyJobStatus;
+import lombok.Builder;
+
+import java.util.List;
+import java.util.UUID;
+
+@Builder
+public record AssemblyJobDto(
+        UUID jobId,
+        AssemblyJobStatus status,
+        List<PuzzleDto> puzzles,
+        String error) {
+}
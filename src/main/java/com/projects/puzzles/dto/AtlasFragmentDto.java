@@ -0,0 +1,7 @@
+package com.projects.puzzles.dto;
+
+public record AtlasFragmentDto(
+        int id,
+        int x,
+        int y) {
+}
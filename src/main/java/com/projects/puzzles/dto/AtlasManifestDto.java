@@ -0,0 +1,15 @@
+package com.projects.puzzles.dto;
+
+import lombok.Builder;
+
+import java.util.List;
+
+@Builder
+public record AtlasManifestDto(
+        String imageUrl,
+        int width,
+        int height,
+        int fragmentWidth,
+        int fragmentHeight,
+        List<AtlasFragmentDto> fragments) {
+}
@@ -0,0 +1,7 @@
+package com.projects.puzzles.dto;
+
+public record MoveDto(
+        int id,
+        int column,
+        int row) {
+}
@@ -0,0 +1,14 @@
+package com.projects.puzzles.dto;
+
+import com.projects.puzzles.utility.EdgeStatus;
+import lombok.Builder;
+
+import java.util.List;
+
+@Builder
+public record MoveResultDto(
+        List<EdgeStatus> changedEdges,
+        int correctEdges,
+        int totalEdges,
+        boolean solved) {
+}
@@ -0,0 +1,13 @@
+package com.projects.puzzles.dto;
+
+import com.projects.puzzles.utility.FragmentFormat;
+import lombok.Builder;
+
+// Options of an upload, missing ones fall back to the configured defaults
+@Builder
+public record UploadDto(
+        Integer columns,
+        Integer rows,
+        FragmentFormat format,
+        Float quality) {
+}
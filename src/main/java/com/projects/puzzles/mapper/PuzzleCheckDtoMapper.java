@@ -1,7 +1,6 @@
 package com.projects.puzzles.mapper;
 
 import com.projects.puzzles.dto.PuzzleCheckDto;
-import com.projects.puzzles.model.Puzzle;
 import org.mapstruct.InjectionStrategy;
 import org.mapstruct.Mapper;
 import org.mapstruct.MapperConfig;
@@ -11,5 +10,9 @@ import java.util.List;
 @Mapper(componentModel = "spring")
 @MapperConfig(injectionStrategy = InjectionStrategy.CONSTRUCTOR)
 public interface PuzzleCheckDtoMapper {
-    List<Puzzle> puzzleCheckDtos(List<PuzzleCheckDto> puzzles);
+    default int[] fragmentIds(List<PuzzleCheckDto> puzzles) {
+        return puzzles.stream()
+                .mapToInt(puzzle -> (int) puzzle.id())
+                .toArray();
+    }
 }
@@ -1,17 +1,41 @@
 package com.projects.puzzles.mapper;
 
 import com.projects.puzzles.dto.PuzzleDto;
-import com.projects.puzzles.model.Puzzle;
+import com.projects.puzzles.model.PuzzleSession;
 import org.mapstruct.InjectionStrategy;
 import org.mapstruct.Mapper;
 import org.mapstruct.MapperConfig;
 
 import java.util.List;
+import java.util.stream.IntStream;
 
 @Mapper(componentModel = "spring")
 @MapperConfig(injectionStrategy = InjectionStrategy.CONSTRUCTOR)
 public interface PuzzleDtoMapper {
-    PuzzleDto puzzleDto(Puzzle puzzle);
+    default PuzzleDto puzzleDto(PuzzleSession session, int fragmentId) {
+        return PuzzleDto.builder()
+                .id(fragmentId)
+                .x(session.getX(fragmentId))
+                .y(session.getY(fragmentId))
+                .width(session.getFragmentWidth())
+                .height(session.getFragmentHeight())
+                .build();
+    }
 
-    List<PuzzleDto> puzzleDtos(List<Puzzle> puzzles);
+    default PuzzleDto puzzleDto(PuzzleSession session, int fragmentId, int cell) {
+        int columns = session.getBoard().getColumns();
+        return PuzzleDto.builder()
+                .id(fragmentId)
+                .x(cell % columns * session.getFragmentWidth())
+                .y(cell / columns * session.getFragmentHeight())
+                .width(session.getFragmentWidth())
+                .height(session.getFragmentHeight())
+                .build();
+    }
+
+    default List<PuzzleDto> puzzleDtos(PuzzleSession session) {
+        return IntStream.range(0, session.getFragmentCount())
+                .mapToObj(fragmentId -> puzzleDto(session, fragmentId))
+                .toList();
+    }
 }
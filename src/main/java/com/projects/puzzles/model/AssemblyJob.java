@@ -0,0 +1,28 @@
+package com.projects.puzzles.model;
+
+import com.projects.puzzles.dto.PuzzleDto;
+import com.projects.puzzles.utility.AssemblyJobStatus;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.Setter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+@Getter
+@Setter
+@RequiredArgsConstructor
+public class AssemblyJob {
+    private final UUID id;
+    private final UUID userId;
+    // log pixel level details of this run
+    private final boolean trace;
+    private volatile AssemblyJobStatus status = AssemblyJobStatus.QUEUED;
+    private volatile List<PuzzleDto> puzzles;
+    private volatile String error;
+    private AssemblyJob previousJob;
+    // event streams following this job, only added to while the job is active
+    private final List<SseEmitter> emitters = new CopyOnWriteArrayList<>();
+}
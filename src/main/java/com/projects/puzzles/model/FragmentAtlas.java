@@ -0,0 +1,13 @@
+package com.projects.puzzles.model;
+
+import com.projects.puzzles.dto.AtlasManifestDto;
+import com.projects.puzzles.utility.FragmentFormat;
+import org.springframework.core.io.Resource;
+
+public record FragmentAtlas(
+        Resource image,
+        FragmentFormat format,
+        long contentLength,
+        String eTag,
+        AtlasManifestDto manifest) {
+}
@@ -0,0 +1,44 @@
+package com.projects.puzzles.model;
+
+import com.projects.puzzles.utility.AssemblyStrategyType;
+import com.projects.puzzles.utility.FragmentPack;
+import com.projects.puzzles.utility.PuzzleDimentions;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.Setter;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Fragments of one split image, shared by every session that uploaded the same bytes with the
+ * same options. Fragments are numbered by their grid position in the picture, sessions map their
+ * own fragment ids onto these positions through their solution. The encoded fragments are kept
+ * in a single {@link FragmentPack} file.
+ */
+@Getter
+@RequiredArgsConstructor
+public class FragmentContent {
+    public static final String DIRECTORY = "content";
+    public static final String PACK_SUFFIX = ".pack";
+
+    private final String id;
+    private final String key;
+    private final PuzzleDimentions puzzleDimentions;
+    private final Set<UUID> owners = ConcurrentHashMap.newKeySet();
+    // placements found by each strategy, as grid positions
+    private final Map<AssemblyStrategyType, int[]> placements = new ConcurrentHashMap<>();
+    // mapped on first read
+    @Setter
+    private volatile FragmentPack pack;
+
+    public static String getPackName(String contentId) {
+        return DIRECTORY + "/" + contentId + PACK_SUFFIX;
+    }
+
+    public static String getKey(String contentId) {
+        return contentId.substring(0, contentId.lastIndexOf('-'));
+    }
+}
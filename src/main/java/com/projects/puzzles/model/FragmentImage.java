@@ -0,0 +1,21 @@
+package com.projects.puzzles.model;
+
+import org.springframework.core.io.Resource;
+import org.springframework.http.MediaType;
+
+/**
+ * Encoded fragment served for one of a session's fragment ids. Which fragment an id shows changes
+ * with every upload, even when the content is shared, so the ETag names the content and the
+ * fragment's grid position instead of the pack file it is read from.
+ */
+public record FragmentImage(
+        Resource resource,
+        MediaType mediaType,
+        long contentLength,
+        String contentId,
+        int position) {
+
+    public String eTag() {
+        return "\"%s-%x\"".formatted(contentId, position);
+    }
+}
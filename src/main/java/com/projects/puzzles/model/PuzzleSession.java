@@ -0,0 +1,49 @@
+package com.projects.puzzles.model;
+
+import com.projects.puzzles.utility.FragmentFormat;
+import com.projects.puzzles.utility.PuzzleBoard;
+import com.projects.puzzles.utility.PuzzleDimentions;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.Setter;
+
+import java.util.UUID;
+
+/**
+ * Board state of one session. Fragment ids are {@code 0..n-1}, so the board's position array
+ * doubles as the fragment coordinates. The fragment images belong to the shared content and are
+ * found through the fragment's position in the solution, see {@link PuzzleBoard#getSolutionPosition(int)}.
+ */
+@Getter
+@RequiredArgsConstructor
+public class PuzzleSession {
+    private final UUID userId;
+    private final String contentId;
+    private final int fragmentWidth;
+    private final int fragmentHeight;
+    private final FragmentFormat format;
+    private final PuzzleBoard board;
+    // changed by the store on every put, so that long running updates can tell whether they are stale
+    @Setter
+    private volatile long revision;
+
+    public int getFragmentCount() {
+        return board.getSolution().length;
+    }
+
+    public boolean containsFragment(int fragmentId) {
+        return fragmentId >= 0 && fragmentId < getFragmentCount();
+    }
+
+    public int getX(int fragmentId) {
+        return board.getPosition(fragmentId) % board.getColumns() * fragmentWidth;
+    }
+
+    public int getY(int fragmentId) {
+        return board.getPosition(fragmentId) / board.getColumns() * fragmentHeight;
+    }
+
+    public PuzzleDimentions getPuzzleDimentions() {
+        return new PuzzleDimentions(fragmentWidth, fragmentHeight);
+    }
+}
@@ -0,0 +1,7 @@
+package com.projects.puzzles.model;
+
+import java.util.UUID;
+
+public record PuzzleSessionExpiredEvent(
+        UUID userId) {
+}
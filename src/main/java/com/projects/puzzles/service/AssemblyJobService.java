@@ -0,0 +1,241 @@
+package com.projects.puzzles.service;
+
+import com.projects.puzzles.dto.AssemblyJobDto;
+import com.projects.puzzles.dto.PuzzleDto;
+import com.projects.puzzles.model.AssemblyJob;
+import com.projects.puzzles.model.PuzzleSessionExpiredEvent;
+import com.projects.puzzles.utility.AssemblyJobStatus;
+import com.projects.puzzles.utility.PuzzleConfig;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+@Service
+@Slf4j
+public class AssemblyJobService {
+    private final PuzzleService puzzleService;
+    private final PuzzleConfig puzzleConfig;
+    private final ThreadPoolExecutor executor;
+    // at most one active job per session, so the FIFO queue serves sessions in turn
+    private final Map<UUID, AssemblyJob> jobsBySession = new ConcurrentHashMap<>();
+    private final Map<UUID, AssemblyJob> jobs = new ConcurrentHashMap<>();
+
+    public AssemblyJobService(PuzzleService puzzleService, PuzzleConfig puzzleConfig) {
+        this.puzzleService = puzzleService;
+        this.puzzleConfig = puzzleConfig;
+        this.executor = new ThreadPoolExecutor(
+                puzzleConfig.assemblyMaxConcurrency(), puzzleConfig.assemblyMaxConcurrency(),
+                0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(puzzleConfig.assemblyQueueCapacity()),
+                new CustomizableThreadFactory("assembly-job-"));
+    }
+
+    private static AssemblyJobDto toDto(AssemblyJob job) {
+        return AssemblyJobDto.builder()
+                .jobId(job.getId())
+                .status(job.getStatus())
+                .puzzles(job.getPuzzles())
+                .error(job.getError())
+                .build();
+    }
+
+    private static void send(AssemblyJob job, SseEmitter emitter, String name, Object data) {
+        try {
+            emitter.send(SseEmitter.event().name(name).data(data));
+        } catch (IOException | IllegalStateException e) {
+            // the client went away or the stream timed out
+            log.debug("Dropping event stream of assembly job {}", job.getId(), e);
+            job.getEmitters().remove(emitter);
+        }
+    }
+
+    private static void sendResult(AssemblyJob job, SseEmitter emitter) {
+        send(job, emitter, job.getStatus() == AssemblyJobStatus.COMPLETED ? "completed" : "failed", toDto(job));
+        emitter.complete();
+    }
+
+    @PreDestroy
+    public void destroy() {
+        log.info("Shutting down assembly job executor");
+        executor.shutdownNow();
+    }
+
+    public AssemblyJobDto submit(UUID userId, boolean trace) {
+        AssemblyJob job = jobsBySession.compute(userId, (key, existing) -> {
+            if (existing != null && existing.getStatus().isActive()) {
+                log.info("Coalescing assemble request of user {} into job {}", userId, existing.getId());
+                return existing;
+            }
+            AssemblyJob newJob = new AssemblyJob(UUID.randomUUID(), userId, trace);
+            newJob.setPreviousJob(existing);
+            jobs.put(newJob.getId(), newJob);
+            try {
+                executor.execute(() -> run(newJob));
+            } catch (RejectedExecutionException e) {
+                log.warn("Assembly queue is full, rejecting job of user {}", userId);
+                jobs.remove(newJob.getId());
+                throw new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, "Too many assembly jobs");
+            }
+            // the previous result stays readable for clients that are still polling it
+            if (existing != null && existing.getPreviousJob() != null) {
+                jobs.remove(existing.getPreviousJob().getId());
+                existing.setPreviousJob(null);
+            }
+            return newJob;
+        });
+        return toDto(job);
+    }
+
+    public AssemblyJobDto getJob(UUID userId, UUID jobId) {
+        return toDto(findJob(userId, jobId));
+    }
+
+    // Streams scoring progress and placed fragments while the job runs, then its result
+    public SseEmitter subscribe(UUID userId, UUID jobId) {
+        AssemblyJob job = findJob(userId, jobId);
+        SseEmitter emitter = new SseEmitter(puzzleConfig.sessionTimeout().toMillis());
+        emitter.onCompletion(() -> job.getEmitters().remove(emitter));
+        emitter.onTimeout(() -> job.getEmitters().remove(emitter));
+        synchronized (job) {
+            if (job.getStatus().isActive()) {
+                job.getEmitters().add(emitter);
+                return emitter;
+            }
+        }
+        sendResult(job, emitter);
+        return emitter;
+    }
+
+    private AssemblyJob findJob(UUID userId, UUID jobId) {
+        AssemblyJob job = jobs.get(jobId);
+        if (job == null || !job.getUserId().equals(userId)) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Assembly job not found");
+        }
+        return job;
+    }
+
+    public void evict(UUID userId) {
+        AssemblyJob job = jobsBySession.remove(userId);
+        while (job != null) {
+            jobs.remove(job.getId());
+            job.getEmitters().forEach(SseEmitter::complete);
+            job = job.getPreviousJob();
+        }
+    }
+
+    @EventListener
+    public void onSessionExpired(PuzzleSessionExpiredEvent event) {
+        evict(event.userId());
+    }
+
+    private void run(AssemblyJob job) {
+        job.setStatus(AssemblyJobStatus.RUNNING);
+        log.info("Running assembly job {} of user {}", job.getId(), job.getUserId());
+        JobEvents jobEvents = new JobEvents(job);
+        try {
+            job.setPuzzles(puzzleService.assemblePuzzles(job.getUserId(), job.isTrace(), jobEvents));
+            job.setStatus(AssemblyJobStatus.COMPLETED);
+        } catch (Exception e) {
+            log.error("Assembly job {} failed", job.getId(), e);
+            job.setError(e.getMessage());
+            job.setStatus(AssemblyJobStatus.FAILED);
+        }
+        // runs after the events still queued, which go to the same streams, and finishes the sender
+        jobEvents.close(() -> {
+            List<SseEmitter> emitters;
+            synchronized (job) {
+                emitters = List.copyOf(job.getEmitters());
+                job.getEmitters().clear();
+            }
+            emitters.forEach(emitter -> sendResult(job, emitter));
+        });
+    }
+
+    /**
+     * Forwards progress to the event streams of a job. Sends block on the client's socket, so they
+     * run on a sender thread of the job and the solver threads only queue events: scoring progress
+     * as the latest value, at most once per percent, placements in order.
+     */
+    private static class JobEvents implements AssemblyListener {
+        private final AssemblyJob job;
+        private final ExecutorService sender;
+        private final Queue<List<PuzzleDto>> placements = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean flushQueued = new AtomicBoolean();
+        private volatile double progress = -1;
+        private double queuedProgress;
+        private double sentProgress = -1;
+
+        JobEvents(AssemblyJob job) {
+            this.job = job;
+            this.sender = Executors.newSingleThreadExecutor(Thread.ofVirtual()
+                    .name("assembly-events-" + job.getId())
+                    .factory());
+        }
+
+        @Override
+        public boolean isListening() {
+            return !job.getEmitters().isEmpty();
+        }
+
+        @Override
+        public void onScoringProgress(double progress) {
+            synchronized (this) {
+                if (progress < 1 && progress - queuedProgress < 0.01) {
+                    return;
+                }
+                queuedProgress = progress;
+            }
+            this.progress = progress;
+            queueFlush();
+        }
+
+        @Override
+        public void onPlaced(List<PuzzleDto> puzzles) {
+            placements.add(puzzles);
+            queueFlush();
+        }
+
+        private void queueFlush() {
+            if (flushQueued.compareAndSet(false, true)) {
+                try {
+                    sender.execute(this::flush);
+                } catch (RejectedExecutionException e) {
+                    // scoring tasks of a failed job may still report after the job was closed
+                    log.debug("Dropping events of closed assembly job {}", job.getId());
+                }
+            }
+        }
+
+        private void flush() {
+            flushQueued.set(false);
+            double latestProgress = progress;
+            if (latestProgress != sentProgress) {
+                sentProgress = latestProgress;
+                job.getEmitters().forEach(emitter -> send(job, emitter, "scoring", latestProgress));
+            }
+            for (List<PuzzleDto> puzzles = placements.poll(); puzzles != null; puzzles = placements.poll()) {
+                List<PuzzleDto> placed = puzzles;
+                job.getEmitters().forEach(emitter -> send(job, emitter, "placement", placed));
+            }
+        }
+
+        void close(Runnable lastTask) {
+            sender.execute(this::flush);
+            sender.execute(lastTask);
+            sender.shutdown();
+        }
+    }
+}
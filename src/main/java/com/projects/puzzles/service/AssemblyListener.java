@@ -0,0 +1,27 @@
+package com.projects.puzzles.service;
+
+import com.projects.puzzles.dto.PuzzleDto;
+
+import java.util.List;
+
+/**
+ * Follows a running assembly. Called from the scoring and assembly threads, so implementations
+ * must be thread safe and should return quickly.
+ */
+public interface AssemblyListener {
+    AssemblyListener NONE = new AssemblyListener() {
+    };
+
+    // false while nobody follows, so that events do not have to be built
+    default boolean isListening() {
+        return false;
+    }
+
+    // share of the edge pairs scored so far, from 0 to 1
+    default void onScoringProgress(double progress) {
+    }
+
+    // fragments whose cells are already fixed, in the coordinates of the final placement
+    default void onPlaced(List<PuzzleDto> puzzles) {
+    }
+}
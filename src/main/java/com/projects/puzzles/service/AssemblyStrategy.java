@@ -0,0 +1,24 @@
+package com.projects.puzzles.service;
+
+import com.projects.puzzles.utility.AssemblyStrategyType;
+import com.projects.puzzles.utility.DissimilarityMatrix;
+
+public interface AssemblyStrategy {
+    AssemblyStrategyType getType();
+
+    /**
+     * Returns the fragment id placed in every cell of a {@code columns} x {@code rows} grid, row by row.
+     * Fragments whose cells are fixed before the whole placement is known may be announced to the listener.
+     */
+    int[] assemble(DissimilarityMatrix dissimilarityMatrix, int columns, int rows, PlacementListener placementListener);
+
+    default int[] assemble(DissimilarityMatrix dissimilarityMatrix, int columns, int rows) {
+        return assemble(dissimilarityMatrix, columns, rows, (fragments, cells) -> {
+        });
+    }
+
+    @FunctionalInterface
+    interface PlacementListener {
+        void onPlaced(int[] fragments, int[] cells);
+    }
+}
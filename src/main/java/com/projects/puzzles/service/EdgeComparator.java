@@ -0,0 +1,130 @@
+package com.projects.puzzles.service;
+
+import com.projects.puzzles.utility.Adjacent;
+import com.projects.puzzles.utility.EdgeStore;
+import com.projects.puzzles.utility.PuzzleConfig;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class EdgeComparator {
+    // pixels compared between two early exit checks, small enough to stop quickly and large enough to vectorize
+    private static final int CHUNK_SIZE = 64;
+
+    private final PuzzleConfig puzzleConfig;
+
+    public double getMeanDiff(EdgeStore edgeStore, int fragment1, Adjacent side, int fragment2) {
+        int offset1 = edgeStore.offset(fragment1, side);
+        int offset2 = edgeStore.offset(fragment2, side.opposite());
+        int length = edgeStore.length(side);
+        return (double) countMismatches(edgeStore, offset1, offset2, length) / length;
+    }
+
+    // Same outcome as getMeanDiff(...) <= maxMeanDiff, but stops as soon as the result is decided
+    public boolean isMatching(EdgeStore edgeStore, int fragment1, Adjacent side, int fragment2, double maxMeanDiff) {
+        int offset1 = edgeStore.offset(fragment1, side);
+        int offset2 = edgeStore.offset(fragment2, side.opposite());
+        int length = edgeStore.length(side);
+        long maxMismatches = getMaxMismatches(maxMeanDiff, length);
+        long mismatches = 0;
+
+        for (int from = 0; from < length; from += CHUNK_SIZE) {
+            int chunkLength = Math.min(CHUNK_SIZE, length - from);
+            mismatches += countMismatches(edgeStore, offset1 + from, offset2 + from, chunkLength);
+            if (mismatches > maxMismatches) {
+                return false;
+            }
+            if (mismatches + length - from - chunkLength <= maxMismatches) {
+                return true;
+            }
+        }
+        return true;
+    }
+
+    // Largest count with count / length <= maxMeanDiff, divided the way getMeanDiff(...) does, since the product
+    // maxMeanDiff * length can round below a count that getMeanDiff(...) accepts, like 0.29 * 100 = 28.999...
+    private static long getMaxMismatches(double maxMeanDiff, int length) {
+        if (maxMeanDiff >= 1) {
+            return length;
+        }
+        long maxMismatches = (long) Math.floor(maxMeanDiff * length);
+        while ((double) (maxMismatches + 1) / length <= maxMeanDiff) {
+            maxMismatches++;
+        }
+        while (maxMismatches >= 0 && (double) maxMismatches / length > maxMeanDiff) {
+            maxMismatches--;
+        }
+        return maxMismatches;
+    }
+
+    // Branch-free so that C2 can vectorize the loop over the byte planes
+    private int countMismatches(EdgeStore edgeStore, int offset1, int offset2, int length) {
+        byte[] red = edgeStore.getRed();
+        byte[] green = edgeStore.getGreen();
+        byte[] blue = edgeStore.getBlue();
+        int colorThreshold = puzzleConfig.colorThreshold();
+        int totalDiff = 0;
+
+        for (int i = 0; i < length; i++) {
+            int diffRed = Math.abs((red[offset1 + i] & 0xFF) - (red[offset2 + i] & 0xFF));
+            int diffGreen = Math.abs((green[offset1 + i] & 0xFF) - (green[offset2 + i] & 0xFF));
+            int diffBlue = Math.abs((blue[offset1 + i] & 0xFF) - (blue[offset2 + i] & 0xFF));
+            int maxDiff = Math.max(diffRed, Math.max(diffGreen, diffBlue));
+            totalDiff += (colorThreshold - maxDiff) >>> 31;
+        }
+
+        return totalDiff;
+    }
+
+    // Coarse counterpart of getMeanDiff(...) on the edge signatures, only good for ranking candidates.
+    // Stops as soon as the difference reaches bound, when the caller is no longer interested in it
+    public int getSignatureDiff(EdgeStore edgeStore, int fragment1, Adjacent side, int fragment2, int bound) {
+        byte[] signatures = edgeStore.getSignatures();
+        int offset1 = edgeStore.signatureOffset(fragment1, side);
+        int offset2 = edgeStore.signatureOffset(fragment2, side.opposite());
+        int totalDiff = 0;
+
+        for (int i = 0; i < EdgeStore.SIGNATURE_LENGTH; i += 3) {
+            int diffRed = Math.abs((signatures[offset1 + i] & 0xFF) - (signatures[offset2 + i] & 0xFF));
+            int diffGreen = Math.abs((signatures[offset1 + i + 1] & 0xFF) - (signatures[offset2 + i + 1] & 0xFF));
+            int diffBlue = Math.abs((signatures[offset1 + i + 2] & 0xFF) - (signatures[offset2 + i + 2] & 0xFF));
+            totalDiff += Math.max(diffRed, Math.max(diffGreen, diffBlue));
+            if (totalDiff >= bound) {
+                return totalDiff;
+            }
+        }
+
+        return totalDiff;
+    }
+
+    // Pixel by pixel logging for requests that asked for tracing, never called otherwise
+    public void traceMismatches(EdgeStore edgeStore, int fragment1, Adjacent side, int fragment2) {
+        int offset1 = edgeStore.offset(fragment1, side);
+        int offset2 = edgeStore.offset(fragment2, side.opposite());
+        int length = edgeStore.length(side);
+        byte[] red = edgeStore.getRed();
+        byte[] green = edgeStore.getGreen();
+        byte[] blue = edgeStore.getBlue();
+        for (int i = 0; i < length; i++) {
+            int r1 = red[offset1 + i] & 0xFF;
+            int g1 = green[offset1 + i] & 0xFF;
+            int b1 = blue[offset1 + i] & 0xFF;
+
+            int r2 = red[offset2 + i] & 0xFF;
+            int g2 = green[offset2 + i] & 0xFF;
+            int b2 = blue[offset2 + i] & 0xFF;
+
+            boolean colorsMatch = Math.abs(r1 - r2) <= puzzleConfig.colorThreshold() &&
+                    Math.abs(g1 - g2) <= puzzleConfig.colorThreshold() &&
+                    Math.abs(b1 - b2) <= puzzleConfig.colorThreshold();
+
+            if (!colorsMatch) {
+                log.info("Fragments {} {} {}: pixels at index {} do not match: ({}, {}, {}) and ({}, {}, {})",
+                        fragment1, side, fragment2, i, r1, g1, b1, r2, g2, b2);
+            }
+        }
+    }
+}
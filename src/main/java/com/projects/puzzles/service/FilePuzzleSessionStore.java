@@ -0,0 +1,225 @@
+package com.projects.puzzles.service;
+
+import com.projects.puzzles.model.PuzzleSession;
+import com.projects.puzzles.model.PuzzleSessionExpiredEvent;
+import com.projects.puzzles.utility.FragmentFormat;
+import com.projects.puzzles.utility.PuzzleBoard;
+import com.projects.puzzles.utility.PuzzleConfig;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Stores every session in a {@code session.bin} file next to its fragment images and reads it
+ * back through a memory mapping, so only the access times stay on the heap and boards survive
+ * a restart.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+@ConditionalOnProperty(prefix = "puzzle", name = "session-store", havingValue = "FILE")
+public class FilePuzzleSessionStore implements PuzzleSessionStore {
+    private static final String SESSION_FILE_NAME = "session.bin";
+    private static final int FORMAT_VERSION = 6;
+
+    private final PuzzleConfig puzzleConfig;
+    private final ApplicationEventPublisher eventPublisher;
+    private final Map<UUID, Long> lastAccessTimes = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    @SneakyThrows
+    public void loadSessions() {
+        Path directory = Paths.get(puzzleConfig.pathToPuzzleImagesDirectory());
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        try (var sessionDirectories = Files.list(directory)) {
+            sessionDirectories
+                    .filter(sessionDirectory -> Files.isRegularFile(sessionDirectory.resolve(SESSION_FILE_NAME)))
+                    .forEach(this::indexSession);
+        }
+        log.info("Found {} stored sessions", lastAccessTimes.size());
+    }
+
+    @SneakyThrows
+    private void indexSession(Path sessionDirectory) {
+        try {
+            UUID userId = UUID.fromString(sessionDirectory.getFileName().toString());
+            Path sessionFile = sessionDirectory.resolve(SESSION_FILE_NAME);
+            if (readVersion(sessionFile) != FORMAT_VERSION) {
+                // expired by the next sweep, which cleans up its directory like for any other session
+                log.info("Session of user {} was stored in an older format, dropping it", userId);
+                lastAccessTimes.put(userId, 0L);
+                return;
+            }
+            lastAccessTimes.put(userId, Files.getLastModifiedTime(sessionFile).toMillis());
+        } catch (IllegalArgumentException e) {
+            log.warn("Skipping session directory with unexpected name: {}", sessionDirectory);
+        }
+    }
+
+    private Path getSessionFile(UUID userId) {
+        return Paths.get(puzzleConfig.pathToPuzzleImagesDirectory() + userId, SESSION_FILE_NAME);
+    }
+
+    @Override
+    public Optional<PuzzleSession> get(UUID userId) {
+        if (!lastAccessTimes.containsKey(userId)) {
+            return Optional.empty();
+        }
+        Path sessionFile = getSessionFile(userId);
+        if (!Files.exists(sessionFile)) {
+            lastAccessTimes.remove(userId);
+            return Optional.empty();
+        }
+        Optional<PuzzleSession> session = read(userId, sessionFile);
+        // sessions in an older format are left to expire
+        session.ifPresent(present -> lastAccessTimes.put(userId, System.currentTimeMillis()));
+        return session;
+    }
+
+    @SneakyThrows
+    private static int readVersion(Path sessionFile) {
+        try (FileChannel channel = FileChannel.open(sessionFile, StandardOpenOption.READ)) {
+            ByteBuffer version = ByteBuffer.allocate(Integer.BYTES);
+            return channel.read(version, 0) == Integer.BYTES ? version.getInt(0) : -1;
+        }
+    }
+
+    @SneakyThrows
+    private static Optional<PuzzleSession> read(UUID userId, Path sessionFile) {
+        try (FileChannel channel = FileChannel.open(sessionFile, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < Integer.BYTES || buffer.getInt(0) != FORMAT_VERSION) {
+                return Optional.empty();
+            }
+            return Optional.of(read(userId, buffer));
+        }
+    }
+
+    // Writers are serialized, so that an update cannot interleave with another put of the same session
+    @Override
+    public synchronized void put(PuzzleSession session) {
+        session.setRevision(PuzzleSessionStore.newRevision());
+        save(session);
+    }
+
+    @Override
+    public synchronized Optional<PuzzleSession> update(UUID userId, long revision, Consumer<PuzzleSession> change) {
+        Path sessionFile = getSessionFile(userId);
+        if (!lastAccessTimes.containsKey(userId) || !Files.exists(sessionFile)) {
+            return Optional.empty();
+        }
+        Optional<PuzzleSession> stored = read(userId, sessionFile);
+        if (stored.isEmpty() || stored.get().getRevision() != revision) {
+            return Optional.empty();
+        }
+        PuzzleSession session = stored.get();
+        change.accept(session);
+        put(session);
+        return Optional.of(session);
+    }
+
+    @SneakyThrows
+    private void save(PuzzleSession session) {
+        Path sessionFile = getSessionFile(session.getUserId());
+        Path temporaryFile = sessionFile.resolveSibling(SESSION_FILE_NAME + ".tmp");
+        Files.write(temporaryFile, write(session).array());
+        // readers never see a partially written session
+        Files.move(temporaryFile, sessionFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        lastAccessTimes.put(session.getUserId(), System.currentTimeMillis());
+    }
+
+    @Override
+    @SneakyThrows
+    public synchronized void remove(UUID userId) {
+        lastAccessTimes.remove(userId);
+        Files.deleteIfExists(getSessionFile(userId));
+    }
+
+    @Override
+    public int size() {
+        return lastAccessTimes.size();
+    }
+
+    @Scheduled(fixedDelayString = "${puzzle.session-sweep-interval}")
+    public void evictExpiredSessions() {
+        long expiryTime = System.currentTimeMillis() - puzzleConfig.sessionTimeout().toMillis();
+        lastAccessTimes.forEach((userId, lastAccessTime) -> {
+            if (lastAccessTime < expiryTime && lastAccessTimes.remove(userId, lastAccessTime)) {
+                log.info("Session of user {} expired", userId);
+                eventPublisher.publishEvent(new PuzzleSessionExpiredEvent(userId));
+            }
+        });
+    }
+
+    private static ByteBuffer write(PuzzleSession session) {
+        PuzzleBoard board = session.getBoard();
+        int[] solution = board.getSolution();
+        int[] placement = board.getPlacement();
+
+        byte[] contentId = session.getContentId().getBytes(StandardCharsets.US_ASCII);
+
+        ByteBuffer buffer = ByteBuffer.allocate((7 + 2 * solution.length) * Integer.BYTES + Long.BYTES
+                + contentId.length);
+        buffer.putInt(FORMAT_VERSION);
+        buffer.putLong(session.getRevision());
+        buffer.putInt(contentId.length);
+        buffer.put(contentId);
+        buffer.putInt(board.getColumns());
+        buffer.putInt(board.getRows());
+        buffer.putInt(session.getFragmentWidth());
+        buffer.putInt(session.getFragmentHeight());
+        buffer.putInt(session.getFormat().ordinal());
+        for (int i = 0; i < solution.length; i++) {
+            buffer.putInt(solution[i]);
+            buffer.putInt(placement[i]);
+        }
+        return buffer;
+    }
+
+    private static PuzzleSession read(UUID userId, ByteBuffer buffer) {
+        // the version was checked by the caller
+        buffer.getInt();
+        long revision = buffer.getLong();
+        byte[] contentId = new byte[buffer.getInt()];
+        buffer.get(contentId);
+        int columns = buffer.getInt();
+        int rows = buffer.getInt();
+        int fragmentWidth = buffer.getInt();
+        int fragmentHeight = buffer.getInt();
+        FragmentFormat format = FragmentFormat.values()[buffer.getInt()];
+        int[] solution = new int[columns * rows];
+        int[] placement = new int[columns * rows];
+        for (int i = 0; i < solution.length; i++) {
+            solution[i] = buffer.getInt();
+            placement[i] = buffer.getInt();
+        }
+        PuzzleBoard board = new PuzzleBoard(columns, rows, solution);
+        board.setPlacement(placement);
+        PuzzleSession session = new PuzzleSession(userId, new String(contentId, StandardCharsets.US_ASCII),
+                fragmentWidth, fragmentHeight, format, board);
+        session.setRevision(revision);
+        return session;
+    }
+}
@@ -0,0 +1,120 @@
+package com.projects.puzzles.service;
+
+import com.projects.puzzles.dto.AtlasFragmentDto;
+import com.projects.puzzles.dto.AtlasManifestDto;
+import com.projects.puzzles.model.FragmentAtlas;
+import com.projects.puzzles.model.PuzzleSession;
+import com.projects.puzzles.utility.FragmentFormat;
+import com.projects.puzzles.utility.PuzzleConfig;
+import com.projects.puzzles.utility.PuzzleDimentions;
+import com.projects.puzzles.utility.SplitOptions;
+import lombok.RequiredArgsConstructor;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class FragmentAtlasService {
+    private final PuzzleConfig puzzleConfig;
+    private final FragmentImageWriter fragmentImageWriter;
+    private final PuzzleSessionStore puzzleSessionStore;
+
+    public boolean isEnabled() {
+        return puzzleConfig.atlasEnabled();
+    }
+
+    // Fragment with id k is drawn at slot k, which is where the board initially shows it
+    public BufferedImage createCanvas(PuzzleDimentions puzzleDimention, SplitOptions splitOptions) {
+        return new BufferedImage(
+                splitOptions.columns() * puzzleDimention.puzzleWidth(),
+                splitOptions.rows() * puzzleDimention.puzzleHeight(),
+                BufferedImage.TYPE_INT_RGB);
+    }
+
+    public void drawFragment(BufferedImage canvas, int puzzleId, BufferedImage puzzleImage, SplitOptions splitOptions) {
+        int x = puzzleId % splitOptions.columns() * puzzleImage.getWidth();
+        int y = puzzleId / splitOptions.columns() * puzzleImage.getHeight();
+        Graphics2D graphics = canvas.createGraphics();
+        try {
+            graphics.drawImage(puzzleImage, x, y, null);
+        } finally {
+            graphics.dispose();
+        }
+    }
+
+    @SneakyThrows
+    public void save(UUID userId, BufferedImage canvas, SplitOptions splitOptions) {
+        byte[] imageBytes = fragmentImageWriter.encode(canvas, splitOptions.format(), splitOptions.quality());
+        Path atlasFile = getAtlasFile(userId, splitOptions.format());
+        Path temporaryFile = atlasFile.resolveSibling(atlasFile.getFileName() + ".tmp");
+        Files.write(temporaryFile, imageBytes);
+        // readers never see a partially written atlas
+        Files.move(temporaryFile, atlasFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        log.info("Saved atlas of {} bytes for user: {}", imageBytes.length, userId);
+    }
+
+    // Atlases of an earlier upload in another format, once the session no longer refers to them
+    @SneakyThrows
+    public void deleteOtherFormats(UUID userId, FragmentFormat format) {
+        for (FragmentFormat otherFormat : FragmentFormat.values()) {
+            if (otherFormat != format) {
+                Files.deleteIfExists(getAtlasFile(userId, otherFormat));
+            }
+        }
+    }
+
+    // The atlas is served from its file and the manifest is derived from the session, so both survive a restart
+    public FragmentAtlas getAtlas(UUID userId) {
+        PuzzleSession session = puzzleSessionStore.get(userId)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Puzzle not found"));
+        Path atlasFile = getAtlasFile(userId, session.getFormat());
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(atlasFile, BasicFileAttributes.class);
+        } catch (IOException e) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Atlas not found");
+        }
+        String eTag = "%x-%x".formatted(attributes.lastModifiedTime().toMillis(), attributes.size());
+        return new FragmentAtlas(new FileSystemResource(atlasFile), session.getFormat(), attributes.size(), eTag,
+                getManifest(session, eTag));
+    }
+
+    private static AtlasManifestDto getManifest(PuzzleSession session, String eTag) {
+        int columns = session.getBoard().getColumns();
+        List<AtlasFragmentDto> fragments = IntStream.range(0, session.getFragmentCount())
+                .mapToObj(id -> new AtlasFragmentDto(id,
+                        id % columns * session.getFragmentWidth(),
+                        id / columns * session.getFragmentHeight()))
+                .toList();
+        return AtlasManifestDto.builder()
+                // the version parameter lets the client cache the atlas forever
+                .imageUrl("/api/puzzles/atlas?v=" + eTag)
+                .width(columns * session.getFragmentWidth())
+                .height(session.getBoard().getRows() * session.getFragmentHeight())
+                .fragmentWidth(session.getFragmentWidth())
+                .fragmentHeight(session.getFragmentHeight())
+                .fragments(fragments)
+                .build();
+    }
+
+    private Path getAtlasFile(UUID userId, FragmentFormat format) {
+        return Paths.get(puzzleConfig.pathToPuzzleImagesDirectory() + userId + "/atlas." + format.getExtension());
+    }
+}
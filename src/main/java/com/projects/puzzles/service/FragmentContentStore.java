@@ -0,0 +1,230 @@
+package com.projects.puzzles.service;
+
+import com.projects.puzzles.model.FragmentContent;
+import com.projects.puzzles.model.PuzzleSession;
+import com.projects.puzzles.utility.FragmentPack;
+import com.projects.puzzles.utility.PuzzleConfig;
+import com.projects.puzzles.utility.SplitOptions;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Content addressed fragments: uploads of the same bytes with the same split options share one
+ * pack of fragment files, their edges and solver results. Every content knows the sessions
+ * using it and is deleted together with the last of them.
+ * <p>
+ * Sessions restored by the FILE session store re-register their content on first access.
+ * Content nobody registered for a whole session timeout after startup is deleted by the sweep.
+ */
+@Component
+@Slf4j
+public class FragmentContentStore {
+    private final PuzzleConfig puzzleConfig;
+    private final FragmentEdgeCache fragmentEdgeCache;
+    private final FragmentImageCache fragmentImageCache;
+    private final Map<String, FragmentContent> contents = new ConcurrentHashMap<>();
+    // content new uploads of a key are given, there may be older ones still in use
+    private final Map<String, String> contentIds = new HashMap<>();
+    private final Map<String, Long> orphans = new HashMap<>();
+    private final Counter hits;
+    private final Counter misses;
+
+    public FragmentContentStore(PuzzleConfig puzzleConfig, FragmentEdgeCache fragmentEdgeCache,
+                                FragmentImageCache fragmentImageCache, MeterRegistry meterRegistry) {
+        this.puzzleConfig = puzzleConfig;
+        this.fragmentEdgeCache = fragmentEdgeCache;
+        this.fragmentImageCache = fragmentImageCache;
+        this.hits = Counter.builder("puzzle.content.requests")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        this.misses = Counter.builder("puzzle.content.requests")
+                .tag("result", "miss")
+                .register(meterRegistry);
+        Gauge.builder("puzzle.content.entries", contents, Map::size)
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    @SneakyThrows
+    public synchronized void loadContents() {
+        Path directory = Paths.get(puzzleConfig.pathToPuzzleImagesDirectory(), FragmentContent.DIRECTORY);
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        List<Path> tileDirectories = new ArrayList<>();
+        try (var files = Files.list(directory)) {
+            files.forEach(file -> {
+                String fileName = file.getFileName().toString();
+                if (fileName.endsWith(FragmentContent.PACK_SUFFIX)) {
+                    orphans.put(fileName.substring(0, fileName.length() - FragmentContent.PACK_SUFFIX.length()), now);
+                } else if (Files.isDirectory(file)) {
+                    tileDirectories.add(file);
+                }
+            });
+        }
+        // contents split before fragments were packed, no stored session can refer to them any more
+        for (Path tileDirectory : tileDirectories) {
+            FileSystemUtils.deleteRecursively(tileDirectory);
+        }
+        log.info("Found {} stored contents, deleted {} tile directories", orphans.size(), tileDirectories.size());
+    }
+
+    public Path getPackFile(String contentId) {
+        return Paths.get(puzzleConfig.pathToPuzzleImagesDirectory(), FragmentContent.getPackName(contentId));
+    }
+
+    public FragmentPack getPack(FragmentContent content) {
+        FragmentPack pack = content.getPack();
+        if (pack != null) {
+            return pack;
+        }
+        synchronized (content) {
+            if (content.getPack() == null) {
+                content.setPack(FragmentPack.open(getPackFile(content.getId())));
+            }
+            return content.getPack();
+        }
+    }
+
+    @SneakyThrows
+    public String getKey(MultipartFile image, SplitOptions splitOptions) {
+        MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+        try (InputStream inputStream = image.getInputStream()) {
+            byte[] buffer = new byte[64 * 1024];
+            for (int read = inputStream.read(buffer); read != -1; read = inputStream.read(buffer)) {
+                messageDigest.update(buffer, 0, read);
+            }
+        }
+        // the maximum side decides the subsampling, so it changes the fragments as well,
+        // while lossless formats are written the same whatever the quality
+        messageDigest.update(ByteBuffer.allocate(4 * Integer.BYTES)
+                .putInt(splitOptions.columns())
+                .putInt(splitOptions.rows())
+                .putInt(splitOptions.format().isLossless() ? 0 : Float.floatToIntBits(splitOptions.quality()))
+                .putInt(puzzleConfig.maxImageSide())
+                .array());
+        messageDigest.update(splitOptions.format().name().getBytes(StandardCharsets.UTF_8));
+        return HexFormat.of().formatHex(messageDigest.digest());
+    }
+
+    public String newContentId(String key) {
+        return key + "-" + Long.toHexString(UUID.randomUUID().getMostSignificantBits());
+    }
+
+    public synchronized Optional<FragmentContent> acquire(String key, UUID userId) {
+        String contentId = contentIds.get(key);
+        if (contentId == null) {
+            misses.increment();
+            return Optional.empty();
+        }
+        hits.increment();
+        FragmentContent content = contents.get(contentId);
+        content.getOwners().add(userId);
+        return Optional.of(content);
+    }
+
+    // Registers freshly split content, unless another upload of the same key was faster
+    public FragmentContent publish(FragmentContent content, UUID userId) {
+        FragmentContent published;
+        synchronized (this) {
+            String contentId = contentIds.putIfAbsent(content.getKey(), content.getId());
+            published = contentId == null ? content : contents.get(contentId);
+            contents.putIfAbsent(published.getId(), published);
+            published.getOwners().add(userId);
+        }
+        if (published != content) {
+            log.info("Content {} was split concurrently, dropping the duplicate", content.getKey());
+            delete(content.getId());
+        }
+        return published;
+    }
+
+    // Re-registers the content of a session that was restored after a restart
+    public FragmentContent adopt(PuzzleSession session) {
+        FragmentContent content = contents.get(session.getContentId());
+        if (content != null && content.getOwners().contains(session.getUserId())) {
+            return content;
+        }
+        synchronized (this) {
+            content = contents.computeIfAbsent(session.getContentId(),
+                    contentId -> new FragmentContent(contentId, FragmentContent.getKey(contentId),
+                            session.getPuzzleDimentions()));
+            contentIds.putIfAbsent(content.getKey(), content.getId());
+            orphans.remove(content.getId());
+            content.getOwners().add(session.getUserId());
+            return content;
+        }
+    }
+
+    public void release(UUID userId, String contentId) {
+        FragmentContent content;
+        synchronized (this) {
+            content = contents.get(contentId);
+            if (content == null || !content.getOwners().remove(userId) || !content.getOwners().isEmpty()) {
+                return;
+            }
+            contents.remove(contentId);
+            contentIds.remove(content.getKey(), contentId);
+        }
+        delete(contentId);
+    }
+
+    public void releaseAll(UUID userId) {
+        List<String> contentIds;
+        synchronized (this) {
+            contentIds = contents.values().stream()
+                    .filter(content -> content.getOwners().contains(userId))
+                    .map(FragmentContent::getId)
+                    .toList();
+        }
+        contentIds.forEach(contentId -> release(userId, contentId));
+    }
+
+    @Scheduled(fixedDelayString = "${puzzle.session-sweep-interval}")
+    public void deleteOrphans() {
+        long expiryTime = System.currentTimeMillis() - puzzleConfig.sessionTimeout().toMillis();
+        List<String> expired = new ArrayList<>();
+        synchronized (this) {
+            orphans.forEach((contentId, orphanSince) -> {
+                if (orphanSince < expiryTime) {
+                    expired.add(contentId);
+                }
+            });
+            expired.forEach(orphans::remove);
+        }
+        expired.forEach(this::delete);
+    }
+
+    @SneakyThrows
+    private void delete(String contentId) {
+        fragmentEdgeCache.evict(contentId);
+        fragmentImageCache.evict(contentId);
+        Files.deleteIfExists(getPackFile(contentId));
+        log.info("Deleted content {}", contentId);
+    }
+}
@@ -0,0 +1,45 @@
+package com.projects.puzzles.service;
+
+import com.projects.puzzles.utility.EdgeStore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+@Component
+@Slf4j
+public class FragmentEdgeCache {
+    private final Map<String, EdgeStore> edgeStores = new ConcurrentHashMap<>();
+    private final Counter hits;
+    private final Counter misses;
+
+    public FragmentEdgeCache(MeterRegistry meterRegistry) {
+        this.hits = Counter.builder("puzzle.edge.cache.requests")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        this.misses = Counter.builder("puzzle.edge.cache.requests")
+                .tag("result", "miss")
+                .register(meterRegistry);
+    }
+
+    public void put(String contentId, EdgeStore edgeStore) {
+        edgeStores.put(contentId, edgeStore);
+    }
+
+    public Optional<EdgeStore> get(String contentId) {
+        EdgeStore edgeStore = edgeStores.get(contentId);
+        (edgeStore != null ? hits : misses).increment();
+        return Optional.ofNullable(edgeStore);
+    }
+
+    public void evict(String contentId) {
+        EdgeStore removed = edgeStores.remove(contentId);
+        if (removed != null) {
+            log.info("Evicted {} cached fragment edges of content: {}", removed.getFragmentCount(), contentId);
+        }
+    }
+}
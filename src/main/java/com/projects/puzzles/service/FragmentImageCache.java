@@ -0,0 +1,85 @@
+package com.projects.puzzles.service;
+
+import com.projects.puzzles.utility.Pair;
+import com.projects.puzzles.utility.PuzzleConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+@Component
+@Slf4j
+public class FragmentImageCache {
+    private final long maxBytes;
+    // access ordered, so iteration starts from the least recently used fragment
+    private final LinkedHashMap<Pair<String, Integer>, byte[]> fragments = new LinkedHashMap<>(16, 0.75f, true);
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictions;
+    private long currentBytes;
+
+    public FragmentImageCache(PuzzleConfig puzzleConfig, MeterRegistry meterRegistry) {
+        this.maxBytes = puzzleConfig.fragmentCacheSize().toBytes();
+        this.hits = Counter.builder("puzzle.fragment.cache.requests")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        this.misses = Counter.builder("puzzle.fragment.cache.requests")
+                .tag("result", "miss")
+                .register(meterRegistry);
+        this.evictions = Counter.builder("puzzle.fragment.cache.evictions")
+                .register(meterRegistry);
+        Gauge.builder("puzzle.fragment.cache.size", this, FragmentImageCache::getCurrentBytes)
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    public synchronized long getCurrentBytes() {
+        return currentBytes;
+    }
+
+    public synchronized void put(String contentId, int position, byte[] bytes) {
+        if (bytes.length > maxBytes) {
+            return;
+        }
+        byte[] previous = fragments.put(Pair.of(contentId, position), bytes);
+        if (previous != null) {
+            currentBytes -= previous.length;
+        }
+        currentBytes += bytes.length;
+
+        Iterator<byte[]> leastRecentlyUsed = fragments.values().iterator();
+        while (currentBytes > maxBytes) {
+            currentBytes -= leastRecentlyUsed.next().length;
+            leastRecentlyUsed.remove();
+            evictions.increment();
+        }
+    }
+
+    public synchronized Optional<byte[]> get(String contentId, int position) {
+        byte[] bytes = fragments.get(Pair.of(contentId, position));
+        (bytes != null ? hits : misses).increment();
+        return Optional.ofNullable(bytes);
+    }
+
+    public synchronized void evict(String contentId) {
+        int removed = 0;
+        Iterator<Map.Entry<Pair<String, Integer>, byte[]>> entries = fragments.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<Pair<String, Integer>, byte[]> entry = entries.next();
+            if (entry.getKey().getFirst().equals(contentId)) {
+                currentBytes -= entry.getValue().length;
+                entries.remove();
+                removed++;
+            }
+        }
+        if (removed > 0) {
+            log.info("Evicted {} cached fragment images of content: {}", removed, contentId);
+        }
+    }
+}
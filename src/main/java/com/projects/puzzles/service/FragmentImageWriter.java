@@ -0,0 +1,82 @@
+package com.projects.puzzles.service;
+
+import com.projects.puzzles.utility.FragmentFormat;
+import lombok.SneakyThrows;
+import org.springframework.stereotype.Component;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+
+@Component
+public class FragmentImageWriter {
+    // ImageWriter is not thread safe, so every writer thread keeps its own instances
+    private final ThreadLocal<Map<FragmentFormat, ImageWriter>> imageWriters = ThreadLocal.withInitial(() ->
+            new EnumMap<>(FragmentFormat.class));
+
+    private static ImageWriter createImageWriter(FragmentFormat format) {
+        var writers = ImageIO.getImageWritersBySuffix(format.getExtension());
+        if (!writers.hasNext()) {
+            throw new RuntimeException("Unsupported fragment format: " + format);
+        }
+        return writers.next();
+    }
+
+    private static ImageWriteParam getWriteParam(ImageWriter imageWriter, FragmentFormat format, float quality) {
+        ImageWriteParam imageWriteParam = imageWriter.getDefaultWriteParam();
+        if (!imageWriteParam.canWriteCompressed()) {
+            return imageWriteParam;
+        }
+        if (format.isLossless()) {
+            String[] compressionTypes = imageWriteParam.getCompressionTypes();
+            // e.g. WebP writers offer a lossless and a lossy compression type
+            Arrays.stream(compressionTypes == null ? new String[0] : compressionTypes)
+                    .filter(compressionType -> compressionType.toLowerCase().contains("lossless"))
+                    .findFirst()
+                    .ifPresent(compressionType -> {
+                        imageWriteParam.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                        imageWriteParam.setCompressionType(compressionType);
+                    });
+        } else {
+            imageWriteParam.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            imageWriteParam.setCompressionQuality(quality);
+        }
+        return imageWriteParam;
+    }
+
+    // Transparent pixels end up black, the way ImageIO.write used to drop the alpha channel for these formats
+    private static BufferedImage withoutAlpha(BufferedImage image) {
+        BufferedImage opaqueImage = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = opaqueImage.createGraphics();
+        try {
+            graphics.drawImage(image, 0, 0, null);
+        } finally {
+            graphics.dispose();
+        }
+        return opaqueImage;
+    }
+
+    @SneakyThrows
+    public byte[] encode(BufferedImage image, FragmentFormat format, float quality) {
+        ImageWriter imageWriter = imageWriters.get().computeIfAbsent(format, FragmentImageWriter::createImageWriter);
+        if (image.getColorModel().hasAlpha() && !format.isAlpha()) {
+            image = withoutAlpha(image);
+        }
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try (ImageOutputStream imageOutputStream = ImageIO.createImageOutputStream(outputStream)) {
+            imageWriter.setOutput(imageOutputStream);
+            imageWriter.write(null, new IIOImage(image, null, null), getWriteParam(imageWriter, format, quality));
+        } finally {
+            imageWriter.reset();
+        }
+        return outputStream.toByteArray();
+    }
+}
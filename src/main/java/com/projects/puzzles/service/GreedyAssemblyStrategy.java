@@ -0,0 +1,417 @@
+package com.projects.puzzles.service;
+
+import com.projects.puzzles.utility.Adjacent;
+import com.projects.puzzles.utility.AssemblyStrategyType;
+import com.projects.puzzles.utility.DissimilarityMatrix;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+
+/**
+ * Ranks every candidate join by dissimilarity, best buddies first, and merges fragment clusters
+ * Kruskal-style while they fit into the grid. Clusters that could not be joined are fitted into
+ * the remaining space afterwards, so a full placement is always produced.
+ */
+@Component
+@Slf4j
+public class GreedyAssemblyStrategy implements AssemblyStrategy {
+    private static final int CANDIDATES_PER_SIDE = 8;
+    private static final int JOIN_INDEX_BITS = 31;
+    private static final long JOIN_INDEX_MASK = (1L << JOIN_INDEX_BITS) - 1;
+    private static final Adjacent[] SIDES = Adjacent.values();
+
+    private final Timer disambiguationTimer;
+
+    public GreedyAssemblyStrategy(MeterRegistry meterRegistry) {
+        // ranking the candidate joins is part of the placement stage timed by the caller
+        this.disambiguationTimer = PuzzleMetrics.stageTimer(meterRegistry, "assemble", "disambiguation");
+    }
+
+    private static long join(boolean bestBuddies, float dissimilarity, int fragment1, Adjacent side, int fragment2,
+                             int size) {
+        long index = ((long) fragment1 * size + fragment2) * 2 + (side == Adjacent.RIGHT ? 0 : 1);
+        long rank = ((long) (bestBuddies ? 0 : 1) << 62) | ((long) Float.floatToIntBits(dissimilarity) << JOIN_INDEX_BITS);
+        return rank | index;
+    }
+
+    private static int dx(Adjacent side) {
+        return switch (side) {
+            case LEFT -> -1;
+            case RIGHT -> 1;
+            case TOP, BOTTOM -> 0;
+        };
+    }
+
+    private static int dy(Adjacent side) {
+        return switch (side) {
+            case TOP -> -1;
+            case BOTTOM -> 1;
+            case LEFT, RIGHT -> 0;
+        };
+    }
+
+    @Override
+    public AssemblyStrategyType getType() {
+        return AssemblyStrategyType.GREEDY;
+    }
+
+    @Override
+    public int[] assemble(DissimilarityMatrix dissimilarityMatrix, int columns, int rows,
+                          PlacementListener placementListener) {
+        int size = dissimilarityMatrix.size();
+        if (size >= 1 << 15) {
+            throw new RuntimeException("Too many puzzles to assemble: " + size);
+        }
+        int[][] bestMatches = new int[SIDES.length][];
+        for (Adjacent side : SIDES) {
+            bestMatches[side.ordinal()] = dissimilarityMatrix.bestMatches(side);
+        }
+
+        long[] joins = disambiguationTimer.record(() -> rankJoins(dissimilarityMatrix, bestMatches));
+        Clusters clusters = new Clusters(size);
+        int merges = 0;
+        for (int i = 0; i < joins.length && merges < size - 1; i++) {
+            if (i > 0 && joins[i] == joins[i - 1]) {
+                continue;
+            }
+            long index = joins[i] & JOIN_INDEX_MASK;
+            Adjacent side = (index & 1) == 0 ? Adjacent.RIGHT : Adjacent.BOTTOM;
+            int fragment1 = (int) ((index >> 1) / size);
+            int fragment2 = (int) ((index >> 1) % size);
+            if (clusters.merge(fragment1, side, fragment2, columns, rows)) {
+                merges++;
+            }
+        }
+        log.info("Merged {} of {} fragments into clusters using {} candidate joins",
+                merges + 1, size, joins.length);
+
+        return place(clusters, dissimilarityMatrix, bestMatches, columns, rows, placementListener);
+    }
+
+    private long[] rankJoins(DissimilarityMatrix dissimilarityMatrix, int[][] bestMatches) {
+        int size = dissimilarityMatrix.size();
+        int candidates = Math.min(CANDIDATES_PER_SIDE, size - 1);
+        long[] joins = new long[SIDES.length * size * candidates];
+        int count = 0;
+        int[] best = new int[candidates];
+        for (Adjacent side : SIDES) {
+            for (int fragment = 0; fragment < size; fragment++) {
+                int found = selectCandidates(dissimilarityMatrix, side, fragment, best);
+                for (int k = 0; k < found; k++) {
+                    // every join is stored as RIGHT or BOTTOM of the left or top fragment
+                    boolean forward = side == Adjacent.RIGHT || side == Adjacent.BOTTOM;
+                    int fragment1 = forward ? fragment : best[k];
+                    int fragment2 = forward ? best[k] : fragment;
+                    Adjacent joinSide = forward ? side : side.opposite();
+                    boolean bestBuddies = bestMatches[joinSide.ordinal()][fragment1] == fragment2 &&
+                            bestMatches[joinSide.opposite().ordinal()][fragment2] == fragment1;
+                    joins[count++] = join(bestBuddies, dissimilarityMatrix.get(joinSide, fragment1, fragment2),
+                            fragment1, joinSide, fragment2, size);
+                }
+            }
+        }
+        long[] ranked = Arrays.copyOf(joins, count);
+        Arrays.sort(ranked);
+        return ranked;
+    }
+
+    private int selectCandidates(DissimilarityMatrix dissimilarityMatrix, Adjacent side, int fragment, int[] best) {
+        int found = 0;
+        for (int other = 0; other < dissimilarityMatrix.size(); other++) {
+            if (other == fragment) {
+                continue;
+            }
+            float value = dissimilarityMatrix.get(side, fragment, other);
+            if (found == best.length && value >= dissimilarityMatrix.get(side, fragment, best[found - 1])) {
+                continue;
+            }
+            int position = found < best.length ? found++ : found - 1;
+            while (position > 0 && dissimilarityMatrix.get(side, fragment, best[position - 1]) > value) {
+                best[position] = best[position - 1];
+                position--;
+            }
+            best[position] = other;
+        }
+        return found;
+    }
+
+    private int[] place(Clusters clusters, DissimilarityMatrix dissimilarityMatrix, int[][] bestMatches,
+                        int columns, int rows, PlacementListener placementListener) {
+        int size = dissimilarityMatrix.size();
+        int[] board = new int[columns * rows];
+        Arrays.fill(board, -1);
+        boolean[] placed = new boolean[size];
+
+        List<List<Integer>> clusterList = clusters.getClusters();
+        clusterList.sort(Comparator.comparingInt(List<Integer>::size).reversed());
+        log.info("Placing {} clusters, largest has {} fragments", clusterList.size(), clusterList.get(0).size());
+
+        for (int c = 0; c < clusterList.size(); c++) {
+            List<Integer> members = clusterList.get(c);
+            if (members.size() == 1) {
+                continue;
+            }
+            int[] offset = c == 0
+                    ? findBorderOffset(clusters, members, dissimilarityMatrix, bestMatches, columns, rows)
+                    : findSeamOffset(clusters, members, dissimilarityMatrix, board, columns, rows);
+            if (offset == null) {
+                continue;
+            }
+            int[] fragments = new int[members.size()];
+            int[] cells = new int[members.size()];
+            for (int m = 0; m < members.size(); m++) {
+                int member = members.get(m);
+                int cell = (clusters.y(member) + offset[1]) * columns + clusters.x(member) + offset[0];
+                board[cell] = member;
+                placed[member] = true;
+                fragments[m] = member;
+                cells[m] = cell;
+            }
+            placementListener.onPlaced(fragments, cells);
+        }
+
+        fillEmptyCells(board, placed, dissimilarityMatrix, columns, rows);
+        return board;
+    }
+
+    // The first cluster has nothing to attach to, so it is moved towards the grid border where its
+    // fragments have the worst best matches, which is where the image border most likely is
+    private int[] findBorderOffset(Clusters clusters, List<Integer> members, DissimilarityMatrix dissimilarityMatrix,
+                                   int[][] bestMatches, int columns, int rows) {
+        int[] bounds = clusters.bounds(members);
+        int[] bestOffset = null;
+        double bestScore = Double.NEGATIVE_INFINITY;
+        for (int offsetY = -bounds[1]; offsetY + bounds[3] < rows; offsetY++) {
+            for (int offsetX = -bounds[0]; offsetX + bounds[2] < columns; offsetX++) {
+                double score = 0;
+                for (int member : members) {
+                    int x = clusters.x(member) + offsetX;
+                    int y = clusters.y(member) + offsetY;
+                    score += borderScore(dissimilarityMatrix, bestMatches, member, Adjacent.LEFT, x == 0);
+                    score += borderScore(dissimilarityMatrix, bestMatches, member, Adjacent.RIGHT, x == columns - 1);
+                    score += borderScore(dissimilarityMatrix, bestMatches, member, Adjacent.TOP, y == 0);
+                    score += borderScore(dissimilarityMatrix, bestMatches, member, Adjacent.BOTTOM, y == rows - 1);
+                }
+                if (score > bestScore) {
+                    bestScore = score;
+                    bestOffset = new int[]{offsetX, offsetY};
+                }
+            }
+        }
+        return bestOffset;
+    }
+
+    private double borderScore(DissimilarityMatrix dissimilarityMatrix, int[][] bestMatches, int fragment,
+                               Adjacent side, boolean onBorder) {
+        if (!onBorder) {
+            return 0;
+        }
+        int bestMatch = bestMatches[side.ordinal()][fragment];
+        return bestMatch == -1 ? 0 : Math.min(1, dissimilarityMatrix.get(side, fragment, bestMatch));
+    }
+
+    private int[] findSeamOffset(Clusters clusters, List<Integer> members, DissimilarityMatrix dissimilarityMatrix,
+                                 int[] board, int columns, int rows) {
+        int[] bounds = clusters.bounds(members);
+        int[] bestOffset = null;
+        double bestCost = Double.MAX_VALUE;
+        for (int offsetY = -bounds[1]; offsetY + bounds[3] < rows; offsetY++) {
+            for (int offsetX = -bounds[0]; offsetX + bounds[2] < columns; offsetX++) {
+                double cost = seamCost(clusters, members, dissimilarityMatrix, board, columns, rows, offsetX, offsetY);
+                if (cost < bestCost) {
+                    bestCost = cost;
+                    bestOffset = new int[]{offsetX, offsetY};
+                }
+            }
+        }
+        return bestOffset;
+    }
+
+    private double seamCost(Clusters clusters, List<Integer> members, DissimilarityMatrix dissimilarityMatrix,
+                            int[] board, int columns, int rows, int offsetX, int offsetY) {
+        double cost = 0;
+        int seams = 0;
+        for (int member : members) {
+            int x = clusters.x(member) + offsetX;
+            int y = clusters.y(member) + offsetY;
+            if (board[y * columns + x] != -1) {
+                return Double.MAX_VALUE;
+            }
+            for (Adjacent side : SIDES) {
+                int neighbourX = x + dx(side);
+                int neighbourY = y + dy(side);
+                if (neighbourX < 0 || neighbourY < 0 || neighbourX >= columns || neighbourY >= rows) {
+                    continue;
+                }
+                int neighbour = board[neighbourY * columns + neighbourX];
+                if (neighbour != -1) {
+                    cost += Math.min(1, dissimilarityMatrix.get(side, member, neighbour));
+                    seams++;
+                }
+            }
+        }
+        // clusters that do not touch anything placed yet go last among the fitting offsets
+        return seams == 0 ? Double.MAX_VALUE / 2 : cost / seams;
+    }
+
+    private void fillEmptyCells(int[] board, boolean[] placed, DissimilarityMatrix dissimilarityMatrix,
+                                int columns, int rows) {
+        List<Integer> leftovers = new ArrayList<>();
+        for (int fragment = 0; fragment < placed.length; fragment++) {
+            if (!placed[fragment]) {
+                leftovers.add(fragment);
+            }
+        }
+        while (!leftovers.isEmpty()) {
+            int cell = mostConstrainedEmptyCell(board, columns, rows);
+            if (cell == -1) {
+                break;
+            }
+            int bestFragment = leftovers.get(0);
+            double bestCost = Double.POSITIVE_INFINITY;
+            for (int fragment : leftovers) {
+                double cost = cellCost(board, dissimilarityMatrix, fragment, cell, columns, rows);
+                if (cost < bestCost) {
+                    bestCost = cost;
+                    bestFragment = fragment;
+                }
+            }
+            board[cell] = bestFragment;
+            leftovers.remove(Integer.valueOf(bestFragment));
+        }
+    }
+
+    private int mostConstrainedEmptyCell(int[] board, int columns, int rows) {
+        int bestCell = -1;
+        int bestNeighbours = -1;
+        for (int cell = 0; cell < board.length; cell++) {
+            if (board[cell] != -1) {
+                continue;
+            }
+            int neighbours = 0;
+            for (Adjacent side : SIDES) {
+                int x = cell % columns + dx(side);
+                int y = cell / columns + dy(side);
+                if (x >= 0 && y >= 0 && x < columns && y < rows && board[y * columns + x] != -1) {
+                    neighbours++;
+                }
+            }
+            if (neighbours > bestNeighbours) {
+                bestNeighbours = neighbours;
+                bestCell = cell;
+            }
+        }
+        return bestCell;
+    }
+
+    private double cellCost(int[] board, DissimilarityMatrix dissimilarityMatrix, int fragment, int cell,
+                            int columns, int rows) {
+        double cost = 0;
+        int seams = 0;
+        for (Adjacent side : SIDES) {
+            int x = cell % columns + dx(side);
+            int y = cell / columns + dy(side);
+            if (x < 0 || y < 0 || x >= columns || y >= rows || board[y * columns + x] == -1) {
+                continue;
+            }
+            cost += Math.min(1, dissimilarityMatrix.get(side, fragment, board[y * columns + x]));
+            seams++;
+        }
+        return seams == 0 ? 0 : cost / seams;
+    }
+
+    private static class Clusters {
+        private final int[] clusterOf;
+        private final int[] x;
+        private final int[] y;
+        private final List<List<Integer>> members = new ArrayList<>();
+        private final List<Map<Long, Integer>> cells = new ArrayList<>();
+        private final int[][] bounds;
+
+        Clusters(int size) {
+            clusterOf = new int[size];
+            x = new int[size];
+            y = new int[size];
+            bounds = new int[size][4];
+            for (int fragment = 0; fragment < size; fragment++) {
+                clusterOf[fragment] = fragment;
+                members.add(new ArrayList<>(List.of(fragment)));
+                Map<Long, Integer> clusterCells = new HashMap<>();
+                clusterCells.put(cell(0, 0), fragment);
+                cells.add(clusterCells);
+            }
+        }
+
+        private static long cell(int x, int y) {
+            return ((long) x << 32) | (y & 0xFFFFFFFFL);
+        }
+
+        int x(int fragment) {
+            return x[fragment];
+        }
+
+        int y(int fragment) {
+            return y[fragment];
+        }
+
+        boolean merge(int fragment1, Adjacent side, int fragment2, int columns, int rows) {
+            int cluster1 = clusterOf[fragment1];
+            int cluster2 = clusterOf[fragment2];
+            if (cluster1 == cluster2) {
+                return false;
+            }
+            // shift that moves cluster2 into the coordinates of cluster1
+            int shiftX = x[fragment1] + dx(side) - x[fragment2];
+            int shiftY = y[fragment1] + dy(side) - y[fragment2];
+            int[] bounds1 = bounds[cluster1];
+            int[] bounds2 = bounds[cluster2];
+            int width = Math.max(bounds1[2], bounds2[2] + shiftX) - Math.min(bounds1[0], bounds2[0] + shiftX) + 1;
+            int height = Math.max(bounds1[3], bounds2[3] + shiftY) - Math.min(bounds1[1], bounds2[1] + shiftY) + 1;
+            if (width > columns || height > rows) {
+                return false;
+            }
+            if (members.get(cluster2).size() <= members.get(cluster1).size()) {
+                return move(cluster2, cluster1, shiftX, shiftY);
+            }
+            return move(cluster1, cluster2, -shiftX, -shiftY);
+        }
+
+        private boolean move(int from, int to, int shiftX, int shiftY) {
+            Map<Long, Integer> targetCells = cells.get(to);
+            List<Integer> moving = members.get(from);
+            for (int fragment : moving) {
+                if (targetCells.containsKey(cell(x[fragment] + shiftX, y[fragment] + shiftY))) {
+                    return false;
+                }
+            }
+            int[] targetBounds = bounds[to];
+            for (int fragment : moving) {
+                x[fragment] += shiftX;
+                y[fragment] += shiftY;
+                clusterOf[fragment] = to;
+                targetCells.put(cell(x[fragment], y[fragment]), fragment);
+                targetBounds[0] = Math.min(targetBounds[0], x[fragment]);
+                targetBounds[1] = Math.min(targetBounds[1], y[fragment]);
+                targetBounds[2] = Math.max(targetBounds[2], x[fragment]);
+                targetBounds[3] = Math.max(targetBounds[3], y[fragment]);
+            }
+            members.get(to).addAll(moving);
+            members.set(from, List.of());
+            cells.set(from, Map.of());
+            return true;
+        }
+
+        int[] bounds(List<Integer> clusterMembers) {
+            return bounds[clusterOf[clusterMembers.get(0)]];
+        }
+
+        List<List<Integer>> getClusters() {
+            return members.stream()
+                    .filter(clusterMembers -> !clusterMembers.isEmpty())
+                    .collect(ArrayList::new, ArrayList::add, ArrayList::addAll);
+        }
+    }
+}
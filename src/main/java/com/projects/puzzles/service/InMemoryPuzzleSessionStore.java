@@ -0,0 +1,88 @@
+package com.projects.puzzles.service;
+
+import com.projects.puzzles.model.PuzzleSession;
+import com.projects.puzzles.model.PuzzleSessionExpiredEvent;
+import com.projects.puzzles.utility.PuzzleConfig;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+@Component
+@Slf4j
+@RequiredArgsConstructor
+@ConditionalOnProperty(prefix = "puzzle", name = "session-store", havingValue = "MEMORY", matchIfMissing = true)
+public class InMemoryPuzzleSessionStore implements PuzzleSessionStore {
+    private final PuzzleConfig puzzleConfig;
+    private final ApplicationEventPublisher eventPublisher;
+    private final Map<UUID, PuzzleSession> sessions = new ConcurrentHashMap<>();
+    private final Map<UUID, Long> lastAccessTimes = new ConcurrentHashMap<>();
+
+    @Override
+    public Optional<PuzzleSession> get(UUID userId) {
+        PuzzleSession session = sessions.get(userId);
+        if (session != null) {
+            lastAccessTimes.put(userId, System.currentTimeMillis());
+        }
+        return Optional.ofNullable(session);
+    }
+
+    @Override
+    public void put(PuzzleSession session) {
+        lastAccessTimes.put(session.getUserId(), System.currentTimeMillis());
+        sessions.compute(session.getUserId(), (userId, stored) -> {
+            session.setRevision(PuzzleSessionStore.newRevision());
+            return session;
+        });
+    }
+
+    @Override
+    public Optional<PuzzleSession> update(UUID userId, long revision, Consumer<PuzzleSession> change) {
+        AtomicBoolean applied = new AtomicBoolean();
+        PuzzleSession updated = sessions.computeIfPresent(userId, (id, stored) -> {
+            if (stored.getRevision() == revision) {
+                change.accept(stored);
+                stored.setRevision(PuzzleSessionStore.newRevision());
+                applied.set(true);
+            }
+            return stored;
+        });
+        if (!applied.get()) {
+            return Optional.empty();
+        }
+        lastAccessTimes.put(userId, System.currentTimeMillis());
+        return Optional.of(updated);
+    }
+
+    @Override
+    public void remove(UUID userId) {
+        sessions.remove(userId);
+        lastAccessTimes.remove(userId);
+    }
+
+    @Override
+    public int size() {
+        return sessions.size();
+    }
+
+    @Scheduled(fixedDelayString = "${puzzle.session-sweep-interval}")
+    public void evictExpiredSessions() {
+        long expiryTime = System.currentTimeMillis() - puzzleConfig.sessionTimeout().toMillis();
+        lastAccessTimes.forEach((userId, lastAccessTime) -> {
+            if (lastAccessTime < expiryTime && lastAccessTimes.remove(userId, lastAccessTime)) {
+                sessions.remove(userId);
+                log.info("Session of user {} expired", userId);
+                eventPublisher.publishEvent(new PuzzleSessionExpiredEvent(userId));
+            }
+        });
+    }
+}
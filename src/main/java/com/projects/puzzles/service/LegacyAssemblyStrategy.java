@@ -0,0 +1,197 @@
+package com.projects.puzzles.service;
+
+import com.projects.puzzles.utility.Adjacent;
+import com.projects.puzzles.utility.AssemblyStrategyType;
+import com.projects.puzzles.utility.DissimilarityMatrix;
+import com.projects.puzzles.utility.Pair;
+import com.projects.puzzles.utility.PuzzleConfig;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class LegacyAssemblyStrategy implements AssemblyStrategy {
+    private final PuzzleConfig puzzleConfig;
+
+    private static void deleteWorseAdjacent(Map<Adjacent, Double> error1, List<Adjacent> copyAdjacents) {
+        Adjacent adjacentWithHighestError = error1.entrySet()
+                .stream()
+                .max(Comparator.comparingDouble(Map.Entry::getValue))
+                .get()
+                .getKey();
+        copyAdjacents.remove(adjacentWithHighestError);
+    }
+
+    private static void removeExistingAdjacents(List<Adjacent> adjacents, Map<Adjacent, Double> error1,
+                                                Map<Adjacent, Double> error2, List<Adjacent> copyAdjacents) {
+        adjacents.stream()
+                .filter(adjacent1 -> error2.get(adjacent1) != null)
+                .filter(adjacent1 -> error1.get(adjacent1) > error2.get(adjacent1))
+                .forEach(copyAdjacents::remove);
+    }
+
+    @Override
+    public AssemblyStrategyType getType() {
+        return AssemblyStrategyType.LEGACY;
+    }
+
+    @Override
+    public int[] assemble(DissimilarityMatrix dissimilarityMatrix, int columns, int rows,
+                          PlacementListener placementListener) {
+        int[][] neighbours = calculateNeighbours(dissimilarityMatrix);
+        int topLeftPuzzle = calculateTopLeftPuzzle(neighbours, 0);
+        int[] placement = calculatePuzzleFragmentMatrix(neighbours, topLeftPuzzle, columns, rows);
+        log.info("Puzzle rows: {}", Arrays.toString(placement));
+        return placement;
+    }
+
+    private int[][] calculateNeighbours(DissimilarityMatrix dissimilarityMatrix) {
+        int size = dissimilarityMatrix.size();
+        int[][] neighbours = new int[Adjacent.values().length][size];
+        for (int[] sideNeighbours : neighbours) {
+            Arrays.fill(sideNeighbours, -1);
+        }
+
+        for (int puzzle1 = 0; puzzle1 < size; puzzle1++) {
+            for (int puzzle2 = 0; puzzle2 < size; puzzle2++) {
+                if (puzzle1 == puzzle2) {
+                    continue;
+                }
+                List<Adjacent> adjacents = areAdjacent(dissimilarityMatrix, puzzle1, puzzle2);
+                if (adjacents.isEmpty()) {
+                    continue;
+                }
+                Adjacent adjacent = adjacents.get(0);
+                if (adjacents.size() > 2)
+                    throw new RuntimeException("There are more than 2 adjacents");
+                if (adjacents.size() > 1) {
+                    adjacent = findCorrectAdjacent(dissimilarityMatrix, adjacents, puzzle1, puzzle2);
+                }
+
+                // keep the most precise of the puzzles that are adjacent on the same side
+                int[] sideNeighbours = neighbours[adjacent.ordinal()];
+                int current = sideNeighbours[puzzle1];
+                if (current == -1 ||
+                        dissimilarityMatrix.get(adjacent, puzzle1, puzzle2) < dissimilarityMatrix.get(adjacent, puzzle1, current)) {
+                    sideNeighbours[puzzle1] = puzzle2;
+                }
+            }
+        }
+        return neighbours;
+    }
+
+    private int[] calculatePuzzleFragmentMatrix(int[][] neighbours, int currentPuzzle, int columns, int rows) {
+        int[] placement = new int[columns * rows];
+        for (int i = 0; i < rows; i++) {
+            int firstInRow = currentPuzzle;
+            for (int j = 0; j < columns; j++) {
+                placement[i * columns + j] = currentPuzzle;
+                int nextPuzzle = neighbours[Adjacent.RIGHT.ordinal()][currentPuzzle];
+                if (nextPuzzle != -1) {
+                    currentPuzzle = nextPuzzle;
+                }
+            }
+            int nextPuzzle = neighbours[Adjacent.BOTTOM.ordinal()][firstInRow];
+            if (nextPuzzle != -1) {
+                currentPuzzle = nextPuzzle;
+            }
+        }
+        return placement;
+    }
+
+    private int calculateTopLeftPuzzle(int[][] neighbours, int firstPuzzle) {
+        int size = neighbours[0].length;
+        for (int steps = 0; steps < size && neighbours[Adjacent.LEFT.ordinal()][firstPuzzle] != -1; steps++) {
+            firstPuzzle = neighbours[Adjacent.LEFT.ordinal()][firstPuzzle];
+        }
+        for (int steps = 0; steps < size && neighbours[Adjacent.TOP.ordinal()][firstPuzzle] != -1; steps++) {
+            firstPuzzle = neighbours[Adjacent.TOP.ordinal()][firstPuzzle];
+        }
+        return firstPuzzle;
+    }
+
+    private Adjacent findCorrectAdjacent(DissimilarityMatrix dissimilarityMatrix,
+                                         List<Adjacent> adjacents, int puzzle1, int puzzle2) {
+        Map<Adjacent, Double> error1 = calculateError(dissimilarityMatrix, puzzle1, puzzle2, adjacents);
+        Map<Adjacent, Double> error2 = new EnumMap<>(Adjacent.class);
+        calculateErrorForPairsWithSameFirst(dissimilarityMatrix, puzzle1, puzzle2, error2, adjacents);
+        List<Adjacent> copyAdjacents = new ArrayList<>(adjacents);
+        removeExistingAdjacents(adjacents, error1, error2, copyAdjacents);
+        if (log.isDebugEnabled()) {
+            log.debug("Puzzle1: {}, Puzzle2: {}, Error1: {}, Error2: {}, Copy adjacents: {}",
+                    puzzle1, puzzle2, error1, error2, copyAdjacents);
+        }
+        if (copyAdjacents.size() > 1) {
+            deleteWorseAdjacent(error1, copyAdjacents);
+        }
+        return copyAdjacents.get(0);
+    }
+
+    private void calculateErrorForPairsWithSameFirst(DissimilarityMatrix dissimilarityMatrix,
+                                                     int puzzle1, int puzzle2,
+                                                     Map<Adjacent, Double> error2, List<Adjacent> adjacents) {
+        for (int puzzle3 = 0; puzzle3 < dissimilarityMatrix.size(); puzzle3++) {
+            if (puzzle3 == puzzle1 || puzzle3 == puzzle2) {
+                continue;
+            }
+            List<Adjacent> adjacents2 = areAdjacent(dissimilarityMatrix, puzzle1, puzzle3);
+            if (adjacents2.isEmpty()) {
+                continue;
+            }
+            if (adjacents2.size() != 1) {
+                List<Adjacent> commonAdjacents = adjacents.stream()
+                        .filter(adjacents2::contains)
+                        .toList();
+                if (commonAdjacents.size() > 1) {
+                    log.info("There are more than 1 common adjacents: {}", commonAdjacents);
+                    log.info("Adjacents: {}", adjacents);
+                    log.info("Adjacents pair2: {}", adjacents2);
+                    log.info("Pair2: {}", Pair.of(puzzle1, puzzle3));
+                    throw new RuntimeException("There are more than 1 adjacents");
+                }
+            }
+            error2.put(adjacents2.get(0), (double) dissimilarityMatrix.get(adjacents2.get(0), puzzle1, puzzle3));
+        }
+    }
+
+    private Map<Adjacent, Double> calculateError(DissimilarityMatrix dissimilarityMatrix,
+                                                 int puzzle1, int puzzle2, List<Adjacent> adjacents) {
+        return adjacents.stream()
+                .collect(Collectors.toMap(
+                        adjacent -> adjacent,
+                        adjacent -> (double) dissimilarityMatrix.get(adjacent, puzzle1, puzzle2),
+                        (a, b) -> b, () -> new EnumMap<>(Adjacent.class))
+                );
+    }
+
+    private List<Adjacent> areAdjacent(DissimilarityMatrix dissimilarityMatrix, int puzzle1, int puzzle2) {
+        List<Adjacent> adjacents = new ArrayList<>();
+
+        if (areEdgesMatching(dissimilarityMatrix, puzzle1, Adjacent.RIGHT, puzzle2)) {
+            adjacents.add(Adjacent.RIGHT);
+        }
+
+        if (areEdgesMatching(dissimilarityMatrix, puzzle1, Adjacent.LEFT, puzzle2)) {
+            adjacents.add(Adjacent.LEFT);
+        }
+
+        if (areEdgesMatching(dissimilarityMatrix, puzzle1, Adjacent.BOTTOM, puzzle2)) {
+            adjacents.add(Adjacent.BOTTOM);
+        }
+
+        if (areEdgesMatching(dissimilarityMatrix, puzzle1, Adjacent.TOP, puzzle2)) {
+            adjacents.add(Adjacent.TOP);
+        }
+
+        return adjacents;
+    }
+
+    private boolean areEdgesMatching(DissimilarityMatrix dissimilarityMatrix, int puzzle1, Adjacent side, int puzzle2) {
+        return dissimilarityMatrix.get(side, puzzle1, puzzle2) <= (float) puzzleConfig.meanErrorProbabilityThreshold();
+    }
+}
@@ -0,0 +1,184 @@
+package com.projects.puzzles.service;
+
+import com.projects.puzzles.utility.Adjacent;
+import com.projects.puzzles.utility.DissimilarityMatrix;
+import com.projects.puzzles.utility.EdgeStore;
+import com.projects.puzzles.utility.PuzzleConfig;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleConsumer;
+import java.util.function.IntConsumer;
+
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class PairScorer {
+    private static final int TILE_SIZE = 32;
+    private static final Adjacent[] SIDES = Adjacent.values();
+
+    private final PuzzleConfig puzzleConfig;
+    private final EdgeComparator edgeComparator;
+    private final ForkJoinPool scoringPool;
+    private final PuzzleMetrics puzzleMetrics;
+
+    public DissimilarityMatrix score(EdgeStore edgeStore, int size, boolean trace) {
+        return score(edgeStore, size, trace, progress -> {
+        });
+    }
+
+    // The progress listener is called from the scoring threads with the share of work done so far
+    public DissimilarityMatrix score(EdgeStore edgeStore, int size, boolean trace, DoubleConsumer progressListener) {
+        int candidates = puzzleConfig.candidatesPerSide();
+        if (candidates > 0 && candidates < size - 1) {
+            return scorePruned(edgeStore, size, candidates, trace, progressListener);
+        }
+        DissimilarityMatrix dissimilarityMatrix = new DissimilarityMatrix(size);
+        List<int[]> tiles = new ArrayList<>();
+        for (int tile1 = 0; tile1 < size; tile1 += TILE_SIZE) {
+            for (int tile2 = tile1; tile2 < size; tile2 += TILE_SIZE) {
+                tiles.add(new int[]{tile1, tile2});
+            }
+        }
+        long start = System.nanoTime();
+        AtomicInteger scoredTiles = new AtomicInteger();
+        scoringPool.invoke(new RangeTask(0, tiles.size(), tile -> {
+            scoreTile(edgeStore, dissimilarityMatrix, tiles.get(tile), trace);
+            progressListener.accept((double) scoredTiles.incrementAndGet() / tiles.size());
+        }));
+        long pairs = (long) size * (size - 1) / 2;
+        puzzleMetrics.countScoringComparisons(pairs * SIDES.length);
+        log.info("Scored {} puzzle pairs in {} tiles in {} ms", pairs, tiles.size(),
+                (System.nanoTime() - start) / 1_000_000);
+        return dissimilarityMatrix;
+    }
+
+    // Pairs that were not compared keep an infinite dissimilarity, which both strategies rank last
+    private DissimilarityMatrix scorePruned(EdgeStore edgeStore, int size, int candidates, boolean trace,
+                                            DoubleConsumer progressListener) {
+        DissimilarityMatrix dissimilarityMatrix = new DissimilarityMatrix(size);
+        LongAdder comparisons = new LongAdder();
+        AtomicInteger scoredFragments = new AtomicInteger();
+        long start = System.nanoTime();
+        scoringPool.invoke(new RangeTask(0, size, fragment -> {
+            scoreCandidates(edgeStore, dissimilarityMatrix, fragment, candidates, trace, comparisons);
+            progressListener.accept((double) scoredFragments.incrementAndGet() / size);
+        }));
+        long total = (long) size * (size - 1) / 2 * SIDES.length;
+        puzzleMetrics.countScoringComparisons(comparisons.sum());
+        log.info("Scored {} of {} edge pairs with {} candidates per side in {} ms", comparisons.sum(), total,
+                candidates, (System.nanoTime() - start) / 1_000_000);
+        return dissimilarityMatrix;
+    }
+
+    // Only the upper triangle is scored: the four sides of (i, j) also give the four sides of (j, i)
+    private void scoreTile(EdgeStore edgeStore, DissimilarityMatrix dissimilarityMatrix, int[] tile, boolean trace) {
+        int size = edgeStore.getFragmentCount();
+        int end1 = Math.min(tile[0] + TILE_SIZE, size);
+        int end2 = Math.min(tile[1] + TILE_SIZE, size);
+        for (int puzzle1 = tile[0]; puzzle1 < end1; puzzle1++) {
+            for (int puzzle2 = Math.max(tile[1], puzzle1 + 1); puzzle2 < end2; puzzle2++) {
+                for (Adjacent side : SIDES) {
+                    dissimilarityMatrix.set(side, puzzle1, puzzle2,
+                            (float) edgeComparator.getMeanDiff(edgeStore, puzzle1, side, puzzle2));
+                    if (trace) {
+                        edgeComparator.traceMismatches(edgeStore, puzzle1, side, puzzle2);
+                    }
+                }
+            }
+        }
+    }
+
+    // Compares every side with the closest signatures only, and with all fragments if none of them comes close
+    private void scoreCandidates(EdgeStore edgeStore, DissimilarityMatrix dissimilarityMatrix, int fragment,
+                                 int candidates, boolean trace, LongAdder comparisons) {
+        int size = edgeStore.getFragmentCount();
+        int[] best = new int[candidates];
+        int[] bestDiffs = new int[candidates];
+        for (Adjacent side : SIDES) {
+            int found = selectCandidates(edgeStore, fragment, side, best, bestDiffs);
+            float bestValue = Float.POSITIVE_INFINITY;
+            for (int k = 0; k < found; k++) {
+                bestValue = Math.min(bestValue,
+                        scorePair(edgeStore, dissimilarityMatrix, fragment, side, best[k], trace, comparisons));
+            }
+            if (bestValue > puzzleConfig.candidateTolerance()) {
+                for (int other = 0; other < size; other++) {
+                    if (other != fragment) {
+                        scorePair(edgeStore, dissimilarityMatrix, fragment, side, other, trace, comparisons);
+                    }
+                }
+            }
+        }
+    }
+
+    private int selectCandidates(EdgeStore edgeStore, int fragment, Adjacent side, int[] best, int[] bestDiffs) {
+        int found = 0;
+        for (int other = 0; other < edgeStore.getFragmentCount(); other++) {
+            if (other == fragment) {
+                continue;
+            }
+            int bound = found == best.length ? bestDiffs[found - 1] : Integer.MAX_VALUE;
+            int diff = edgeComparator.getSignatureDiff(edgeStore, fragment, side, other, bound);
+            if (diff >= bound) {
+                continue;
+            }
+            int position = found < best.length ? found++ : found - 1;
+            while (position > 0 && bestDiffs[position - 1] > diff) {
+                best[position] = best[position - 1];
+                bestDiffs[position] = bestDiffs[position - 1];
+                position--;
+            }
+            best[position] = other;
+            bestDiffs[position] = diff;
+        }
+        return found;
+    }
+
+    // A pair may be a candidate from both of its sides, it is compared once unless two threads race for it
+    private float scorePair(EdgeStore edgeStore, DissimilarityMatrix dissimilarityMatrix, int fragment1, Adjacent side,
+                            int fragment2, boolean trace, LongAdder comparisons) {
+        float value = dissimilarityMatrix.get(side, fragment1, fragment2);
+        if (value != Float.POSITIVE_INFINITY) {
+            return value;
+        }
+        value = (float) edgeComparator.getMeanDiff(edgeStore, fragment1, side, fragment2);
+        dissimilarityMatrix.set(side, fragment1, fragment2, value);
+        comparisons.increment();
+        if (trace) {
+            edgeComparator.traceMismatches(edgeStore, fragment1, side, fragment2);
+        }
+        return value;
+    }
+
+    private static class RangeTask extends RecursiveAction {
+        private final int from;
+        private final int to;
+        private final IntConsumer action;
+
+        RangeTask(int from, int to, IntConsumer action) {
+            this.from = from;
+            this.to = to;
+            this.action = action;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= 1) {
+                if (to > from) {
+                    action.accept(from);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new RangeTask(from, middle, action), new RangeTask(middle, to, action));
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.projects.puzzles.service;
+
+import com.projects.puzzles.utility.CheckMode;
+import com.projects.puzzles.utility.PuzzleConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Stage timers and counters of the split, assemble and check pipelines, exported through actuator.
+ */
+@Component
+@Slf4j
+public class PuzzleMetrics {
+    private static final List<String> SPLIT_STAGES = List.of("decode", "total", "crop", "encode", "write");
+    private static final List<String> ASSEMBLE_STAGES = List.of("scoring", "placement");
+
+    private final PuzzleConfig puzzleConfig;
+    private final Counter scoringComparisons;
+    private final Counter checkComparisons;
+    private final Counter fragmentDecodes;
+    private final AtomicLong diskUsage = new AtomicLong();
+    private final Map<String, Timer> splitTimers;
+    private final Map<String, Timer> assembleTimers;
+    private final Map<CheckMode, Timer> correctCheckTimers = new EnumMap<>(CheckMode.class);
+    private final Map<CheckMode, Timer> incorrectCheckTimers = new EnumMap<>(CheckMode.class);
+
+    public PuzzleMetrics(PuzzleConfig puzzleConfig, MeterRegistry meterRegistry,
+                         PuzzleSessionStore puzzleSessionStore) {
+        this.puzzleConfig = puzzleConfig;
+        this.scoringComparisons = Counter.builder("puzzle.edge.comparisons")
+                .tag("pipeline", "assemble")
+                .register(meterRegistry);
+        this.checkComparisons = Counter.builder("puzzle.edge.comparisons")
+                .tag("pipeline", "check")
+                .register(meterRegistry);
+        this.fragmentDecodes = Counter.builder("puzzle.fragment.decodes")
+                .register(meterRegistry);
+        Gauge.builder("puzzle.sessions", puzzleSessionStore, PuzzleSessionStore::size)
+                .register(meterRegistry);
+        Gauge.builder("puzzle.disk.usage", diskUsage, AtomicLong::get)
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        this.splitTimers = stageTimers(meterRegistry, "split", SPLIT_STAGES);
+        this.assembleTimers = stageTimers(meterRegistry, "assemble", ASSEMBLE_STAGES);
+        for (CheckMode checkMode : CheckMode.values()) {
+            correctCheckTimers.put(checkMode, checkTimer(meterRegistry, checkMode, "correct"));
+            incorrectCheckTimers.put(checkMode, checkTimer(meterRegistry, checkMode, "incorrect"));
+        }
+    }
+
+    static Timer stageTimer(MeterRegistry meterRegistry, String pipeline, String stage) {
+        return Timer.builder("puzzle." + pipeline)
+                .tag("stage", stage)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    private static Map<String, Timer> stageTimers(MeterRegistry meterRegistry, String pipeline,
+                                                  List<String> stages) {
+        return stages.stream()
+                .collect(Collectors.toUnmodifiableMap(stage -> stage,
+                        stage -> stageTimer(meterRegistry, pipeline, stage)));
+    }
+
+    private static Timer checkTimer(MeterRegistry meterRegistry, CheckMode checkMode, String result) {
+        return Timer.builder("puzzle.check")
+                .tag("mode", checkMode.name())
+                .tag("result", result)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    private static Timer timer(Map<String, Timer> timers, String stage) {
+        Timer timer = timers.get(stage);
+        if (timer == null) {
+            throw new IllegalArgumentException("Unknown stage " + stage);
+        }
+        return timer;
+    }
+
+    public void recordSplit(String stage, long nanos) {
+        timer(splitTimers, stage).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordAssemble(String stage, long nanos) {
+        timer(assembleTimers, stage).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordCheck(CheckMode checkMode, boolean correct, long nanos) {
+        (correct ? correctCheckTimers : incorrectCheckTimers).get(checkMode).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void countScoringComparisons(long comparisons) {
+        scoringComparisons.increment(comparisons);
+    }
+
+    public void countCheckComparison() {
+        checkComparisons.increment();
+    }
+
+    public void countFragmentDecode() {
+        fragmentDecodes.increment();
+    }
+
+    // walking the directory is too slow for every scrape, so the gauge shows the last sweep
+    @Scheduled(fixedDelayString = "${puzzle.session-sweep-interval}")
+    public void refreshDiskUsage() {
+        Path directory = Paths.get(puzzleConfig.pathToPuzzleImagesDirectory());
+        try (Stream<Path> files = Files.walk(directory)) {
+            diskUsage.set(files.filter(Files::isRegularFile).mapToLong(PuzzleMetrics::fileSize).sum());
+        } catch (NoSuchFileException e) {
+            diskUsage.set(0);
+        } catch (IOException | UncheckedIOException e) {
+            // files are deleted by resets and expiry while walking, the next sweep will catch up
+            log.debug("Could not measure disk usage of {}", directory, e);
+        }
+    }
+
+    private static long fileSize(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+}
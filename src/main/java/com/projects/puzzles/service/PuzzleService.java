@@ -1,22 +1,47 @@
 package com.projects.puzzles.service;
 
+import com.projects.puzzles.dto.MoveDto;
+import com.projects.puzzles.dto.MoveResultDto;
 import com.projects.puzzles.dto.PuzzleCheckDto;
 import com.projects.puzzles.dto.PuzzleDto;
+import com.projects.puzzles.dto.UploadDto;
 import com.projects.puzzles.mapper.PuzzleCheckDtoMapper;
 import com.projects.puzzles.mapper.PuzzleDtoMapper;
-import com.projects.puzzles.model.Puzzle;
+import com.projects.puzzles.model.FragmentContent;
+import com.projects.puzzles.model.FragmentImage;
+import com.projects.puzzles.model.PuzzleSession;
+import com.projects.puzzles.model.PuzzleSessionExpiredEvent;
 import com.projects.puzzles.utility.Adjacent;
-import com.projects.puzzles.utility.Pair;
+import com.projects.puzzles.utility.AssemblyStrategyType;
+import com.projects.puzzles.utility.ByteBufferResource;
+import com.projects.puzzles.utility.CheckMode;
+import com.projects.puzzles.utility.DissimilarityMatrix;
+import com.projects.puzzles.utility.EdgeStatus;
+import com.projects.puzzles.utility.EdgeStore;
+import com.projects.puzzles.utility.FragmentEdges;
+import com.projects.puzzles.utility.FragmentFormat;
+import com.projects.puzzles.utility.FragmentPack;
+import com.projects.puzzles.utility.FragmentPackWriter;
+import com.projects.puzzles.utility.PuzzleBoard;
 import com.projects.puzzles.utility.PuzzleConfig;
 import com.projects.puzzles.utility.PuzzleDimentions;
-import jakarta.annotation.PreDestroy;
+import com.projects.puzzles.utility.SplitOptions;
 import lombok.RequiredArgsConstructor;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.server.ResponseStatusException;
 
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayInputStream;
 import java.io.File;
@@ -25,11 +50,11 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.stream.IntStream;
 
 import static java.util.stream.Collectors.toCollection;
@@ -38,145 +63,251 @@ import static java.util.stream.Collectors.toCollection;
 @Slf4j
 @RequiredArgsConstructor
 public class PuzzleService {
-    private static final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
     private final PuzzleConfig puzzleConfig;
     private final PuzzleDtoMapper puzzleDtoMapper;
     private final PuzzleCheckDtoMapper puzzleCheckDtoMapper;
-    private final Map<UUID, Map<Integer, Puzzle>> puzzlesMap = new ConcurrentHashMap<>();
-    private final Map<UUID, Pair<Integer, Integer>> puzzleSizeMap = new ConcurrentHashMap<>();
-
-    private double getMeanDiff(int[] edge1, int[] edge2) {
-        int totalDiff = 0;
-
-        for (int i = 0; i < edge1.length; i++) {
-            int pixel1 = edge1[i];
-            int pixel2 = edge2[i];
-
-            int r1 = (pixel1 >> 16) & 0xFF;
-            int g1 = (pixel1 >> 8) & 0xFF;
-            int b1 = pixel1 & 0xFF;
-
-            int r2 = (pixel2 >> 16) & 0xFF;
-            int g2 = (pixel2 >> 8) & 0xFF;
-            int b2 = pixel2 & 0xFF;
-
-            boolean colorsMatch = Math.abs(r1 - r2) <= puzzleConfig.colorThreshold() &&
-                    Math.abs(g1 - g2) <= puzzleConfig.colorThreshold() &&
-                    Math.abs(b1 - b2) <= puzzleConfig.colorThreshold();
-
-            if (!colorsMatch) {
-                log.info("Pixels at index {} do not match", i);
-                log.info("Pixel 1: ({}, {}, {})", r1, g1, b1);
-                log.info("Pixel 2: ({}, {}, {})", r2, g2, b2);
-                totalDiff++;
-            }
+    private final FragmentEdgeCache fragmentEdgeCache;
+    private final EdgeComparator edgeComparator;
+    private final PairScorer pairScorer;
+    private final List<AssemblyStrategy> assemblyStrategies;
+    private final FragmentImageWriter fragmentImageWriter;
+    private final FragmentImageCache fragmentImageCache;
+    private final FragmentAtlasService fragmentAtlasService;
+    private final ThreadPoolExecutor fragmentWriterPool;
+    private final PuzzleSessionStore puzzleSessionStore;
+    private final SolverDiagnostics solverDiagnostics;
+    private final PuzzleMetrics puzzleMetrics;
+    private final FragmentContentStore fragmentContentStore;
+
+    private static ImageReader getImageReader(ImageInputStream imageInputStream) {
+        Iterator<ImageReader> imageReaders = ImageIO.getImageReaders(imageInputStream);
+        if (!imageReaders.hasNext()) {
+            throw new RuntimeException("Unsupported image format");
         }
-
-        return (double) totalDiff / edge1.length;
+        ImageReader imageReader = imageReaders.next();
+        imageReader.setInput(imageInputStream, false, true);
+        return imageReader;
     }
 
-    private Puzzle setPuzzle(PuzzleDimentions puzzleDimention, Integer puzzleId, String puzzleImageName) {
-        return Puzzle.builder()
-                .id(puzzleId)
-                .x(puzzleId % puzzleConfig.numPuzzlesX() * puzzleDimention.puzzleWidth())
-                .y(puzzleId / puzzleConfig.numPuzzlesX() * puzzleDimention.puzzleHeight())
-                .width(puzzleDimention.puzzleWidth())
-                .height(puzzleDimention.puzzleHeight())
-                .imageName(puzzleImageName)
-                .build();
-    }
-
-    private static BufferedImage getBufferedImage(MultipartFile image) throws IOException {
-        byte[] imageBytes = image.getBytes();
-        ByteArrayInputStream bais = new ByteArrayInputStream(imageBytes);
-        return ImageIO.read(bais);
-    }
+    @SneakyThrows
+    public void divideIntoPuzzles(UUID id, MultipartFile image, UploadDto uploadDto) {
+        SplitOptions splitOptions = getSplitOptions(uploadDto);
+        String contentKey = fragmentContentStore.getKey(image, splitOptions);
+        Optional<String> previousContentId = puzzleSessionStore.get(id).map(PuzzleSession::getContentId);
+
+        // the directory also holds the stored session, which is only replaced once the new split succeeded
+        Files.createDirectories(Paths.get(puzzleConfig.pathToPuzzleImagesDirectory() + id));
+        List<Integer> shuffledPuzzleIds = IntStream.range(0, splitOptions.getFragmentCount())
+                .boxed()
+                .collect(toCollection(ArrayList::new));
+        Collections.shuffle(shuffledPuzzleIds);
 
-    private static void updateCoordinatesOfCurrentFragments(List<List<Puzzle>> puzzleRows,
-                                                            int puzzleWidth, int puzzleHeight) {
-        for (int i = 0; i < puzzleRows.size(); i++) {
-            List<Puzzle> puzzleRow = puzzleRows.get(i);
-            for (int j = 0; j < puzzleRow.size(); j++) {
-                Puzzle puzzle = puzzleRow.get(j);
-                puzzle.setX(j * puzzleWidth);
-                puzzle.setY(i * puzzleHeight);
+        Optional<FragmentContent> sharedContent = fragmentContentStore.acquire(contentKey, id);
+        FragmentContent content = sharedContent.isPresent()
+                ? sharedContent.get()
+                : splitContent(id, image, contentKey, splitOptions, shuffledPuzzleIds);
+        try {
+            if (sharedContent.isPresent()) {
+                log.info("Reusing content {} for user {}", content.getId(), id);
+                if (fragmentAtlasService.isEnabled()) {
+                    saveAtlas(id, content, splitOptions, shuffledPuzzleIds);
+                }
+            }
+            PuzzleDimentions puzzleDimention = content.getPuzzleDimentions();
+            PuzzleBoard board = new PuzzleBoard(splitOptions.columns(), splitOptions.rows(),
+                    shuffledPuzzleIds.stream().mapToInt(Integer::intValue).toArray());
+            puzzleSessionStore.put(new PuzzleSession(id, content.getId(),
+                    puzzleDimention.puzzleWidth(), puzzleDimention.puzzleHeight(), splitOptions.format(), board));
+        } catch (Exception e) {
+            // the stored session keeps its reference when it was split from the same upload
+            if (!previousContentId.equals(Optional.of(content.getId()))) {
+                fragmentContentStore.release(id, content.getId());
             }
+            throw e;
         }
+        fragmentAtlasService.deleteOtherFormats(id, splitOptions.format());
+        previousContentId
+                .filter(contentId -> !contentId.equals(content.getId()))
+                .ifPresent(contentId -> fragmentContentStore.release(id, contentId));
+    }
+
+    private FragmentContent splitContent(UUID id, MultipartFile image, String contentKey, SplitOptions splitOptions,
+                                         List<Integer> shuffledPuzzleIds) throws IOException {
+        String contentId = fragmentContentStore.newContentId(contentKey);
+        Path packFile = fragmentContentStore.getPackFile(contentId);
+        Files.createDirectories(packFile.getParent());
+        PuzzleDimentions puzzleDimention;
+        try (ImageInputStream imageInputStream = ImageIO.createImageInputStream(image.getInputStream());
+             FragmentPackWriter packWriter = new FragmentPackWriter(packFile, splitOptions.getFragmentCount())) {
+            ImageReader imageReader = getImageReader(imageInputStream);
+            try {
+                puzzleDimention = splitContent(id, contentId, imageReader, splitOptions, shuffledPuzzleIds, packWriter);
+                packWriter.finish();
+            } finally {
+                imageReader.dispose();
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(packFile);
+            throw e;
+        }
+        return fragmentContentStore.publish(new FragmentContent(contentId, contentKey, puzzleDimention), id);
     }
 
-    private static void deleteWorseAdjacent(Map<Adjacent, Double> error1, List<Adjacent> copyAdjacents) {
-        Adjacent adjacentWithHighestError = error1.entrySet()
-                .stream()
-                .max(Comparator.comparingDouble(Map.Entry::getValue))
-                .get()
-                .getKey();
-        copyAdjacents.remove(adjacentWithHighestError);
-    }
-
-    private static void removeExistingAdjacents(List<Adjacent> adjacents, Map<Adjacent, Double> error1,
-                                                Map<Adjacent, Double> error2, List<Adjacent> copyAdjacents) {
-        adjacents.stream()
-                .filter(adjacent1 -> error2.get(adjacent1) != null)
-                .filter(adjacent1 -> error1.get(adjacent1) > error2.get(adjacent1))
-                .forEach(copyAdjacents::remove);
-    }
-
-    @PreDestroy
-    public void destroy() {
-        log.info("Shutting down executor");
-        executor.shutdown();
-    }
-
-    @SneakyThrows
-    public void divideIntoPuzzles(UUID id, MultipartFile image) {
-        BufferedImage fullImage = getBufferedImage(image);
-
-        PuzzleDimentions puzzleDimention = getPuzzleDimentions(id, fullImage);
-
-        Map<Integer, Puzzle> puzzles = new HashMap<>();
-        if (checkIfTheUserFolderExists(id)) {
-            deletePuzzleImages(id);
+    // Atlas of a session whose fragments were split by an earlier upload of the same image
+    private void saveAtlas(UUID id, FragmentContent content, SplitOptions splitOptions,
+                           List<Integer> shuffledPuzzleIds) {
+        BufferedImage atlas = fragmentAtlasService.createCanvas(content.getPuzzleDimentions(), splitOptions);
+        FragmentPack pack = fragmentContentStore.getPack(content);
+        for (int position = 0; position < shuffledPuzzleIds.size(); position++) {
+            fragmentAtlasService.drawFragment(atlas, shuffledPuzzleIds.get(position),
+                    getTileImage(pack, position), splitOptions);
         }
-        List<Integer> shuffledPuzzleIds = IntStream.range(0, puzzleConfig.numPuzzlesX() * puzzleConfig.numPuzzlesY())
-                .boxed()
-                .collect(toCollection(ArrayList::new));
-        Collections.shuffle(shuffledPuzzleIds);
-        savePuzzles(id, image, fullImage, puzzleDimention, puzzles, shuffledPuzzleIds);
-        puzzlesMap.put(id, puzzles);
+        fragmentAtlasService.save(id, atlas, splitOptions);
+    }
+
+    private SplitOptions getSplitOptions(UploadDto uploadDto) {
+        int columns = Optional.ofNullable(uploadDto.columns()).orElse(puzzleConfig.numPuzzlesX());
+        int rows = Optional.ofNullable(uploadDto.rows()).orElse(puzzleConfig.numPuzzlesY());
+        FragmentFormat format = Optional.ofNullable(uploadDto.format()).orElse(puzzleConfig.fragmentFormat());
+        float quality = Optional.ofNullable(uploadDto.quality()).orElse(puzzleConfig.jpegQuality());
+        if (columns < 1 || rows < 1 || columns * rows < 2
+                || columns > puzzleConfig.maxGridSide() || rows > puzzleConfig.maxGridSide()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "Grid must have at least 2 and at most %d fragments per side".formatted(puzzleConfig.maxGridSide()));
+        }
+        if (DissimilarityMatrix.getBytes(columns * rows) > puzzleConfig.assemblyMemoryBudget().toBytes()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Grid has too many fragments to be assembled");
+        }
+        if (!format.isAvailable()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Fragment format is not supported: " + format);
+        }
+        if (quality <= 0 || quality > 1) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Quality must be in (0, 1]");
+        }
+        return new SplitOptions(columns, rows, format, quality);
     }
 
-    private void savePuzzles(UUID id, MultipartFile image, BufferedImage fullImage, PuzzleDimentions puzzleDimention,
-                             Map<Integer, Puzzle> puzzles, List<Integer> shuffledPuzzleIds) {
-        for (int y = 0; y < puzzleConfig.numPuzzlesY(); y++) {
-            for (int x = 0; x < puzzleConfig.numPuzzlesX(); x++) {
-                BufferedImage puzzleImage = fullImage.getSubimage(
-                        x * puzzleDimention.puzzleWidth(),
-                        y * puzzleDimention.puzzleHeight(),
-                        puzzleDimention.puzzleWidth(),
-                        puzzleDimention.puzzleHeight());
-                Integer puzzleId = shuffledPuzzleIds.get(y * puzzleConfig.numPuzzlesX() + x);
-                String puzzleImageName = "%s/%s_%d.jpg".formatted(id, image.getName(), puzzleId);
-
-                Puzzle puzzle = setPuzzle(puzzleDimention, puzzleId, puzzleImageName);
-
-                savePuzzleImage(puzzleImage, puzzleImageName);
-
-                puzzles.put(puzzleId, puzzle);
+    private PuzzleDimentions splitContent(UUID id, String contentId, ImageReader imageReader, SplitOptions splitOptions,
+                                          List<Integer> shuffledPuzzleIds, FragmentPackWriter packWriter)
+            throws IOException {
+        int subsampling = getSubsampling(imageReader.getWidth(0), imageReader.getHeight(0));
+        PuzzleDimentions puzzleDimention = getPuzzleDimentions(
+                imageReader.getWidth(0) / subsampling, imageReader.getHeight(0) / subsampling, splitOptions);
+        if (puzzleDimention.puzzleWidth() < 1 || puzzleDimention.puzzleHeight() < 1) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Image is too small for the grid");
+        }
+        // edges are stored by grid position, sessions translate their fragment ids through the solution
+        EdgeStore edgeStore = new EdgeStore(shuffledPuzzleIds.size(),
+                puzzleDimention.puzzleWidth(), puzzleDimention.puzzleHeight());
+        savePuzzles(id, contentId, imageReader, subsampling, puzzleDimention, splitOptions, shuffledPuzzleIds,
+                edgeStore, packWriter);
+        fragmentEdgeCache.put(contentId, edgeStore);
+        return puzzleDimention;
+    }
+
+    private int getSubsampling(int imageWidth, int imageHeight) {
+        int longestSide = Math.max(imageWidth, imageHeight);
+        return Math.max(1, (longestSide + puzzleConfig.maxImageSide() - 1) / puzzleConfig.maxImageSide());
+    }
+
+    // Number of puzzle rows decoded at once, at least one row whatever the memory budget is
+    private int getRowsPerBand(PuzzleDimentions puzzleDimention, SplitOptions splitOptions) {
+        long rowBytes = (long) splitOptions.columns() * puzzleDimention.puzzleWidth()
+                * puzzleDimention.puzzleHeight() * Integer.BYTES;
+        long rows = puzzleConfig.splitMemoryBudget().toBytes() / Math.max(1, rowBytes);
+        return (int) Math.max(1, Math.min(rows, splitOptions.rows()));
+    }
+
+    private BufferedImage readBand(ImageReader imageReader, int subsampling, PuzzleDimentions puzzleDimention,
+                                   SplitOptions splitOptions, int firstRow, int rows) throws IOException {
+        ImageReadParam imageReadParam = imageReader.getDefaultReadParam();
+        imageReadParam.setSourceRegion(new Rectangle(
+                0,
+                firstRow * puzzleDimention.puzzleHeight() * subsampling,
+                splitOptions.columns() * puzzleDimention.puzzleWidth() * subsampling,
+                rows * puzzleDimention.puzzleHeight() * subsampling));
+        imageReadParam.setSourceSubsampling(subsampling, subsampling, 0, 0);
+        return imageReader.read(0, imageReadParam);
+    }
+
+    private void savePuzzles(UUID id, String contentId, ImageReader imageReader, int subsampling,
+                             PuzzleDimentions puzzleDimention,
+                             SplitOptions splitOptions, List<Integer> shuffledPuzzleIds,
+                             EdgeStore edgeStore, FragmentPackWriter packWriter) throws IOException {
+        int rowsPerBand = getRowsPerBand(puzzleDimention, splitOptions);
+        log.info("Splitting image of user {} in bands of {} rows with subsampling {}", id, rowsPerBand, subsampling);
+        long startTime = System.nanoTime();
+        LongAdder decodeNanos = new LongAdder();
+        LongAdder cropNanos = new LongAdder();
+        LongAdder encodeNanos = new LongAdder();
+        LongAdder writeNanos = new LongAdder();
+        BufferedImage atlas = fragmentAtlasService.isEnabled() ? fragmentAtlasService.createCanvas(puzzleDimention, splitOptions) : null;
+        // the next band is decoded while the writers are still busy with the previous one
+        CompletableFuture<Void> previousBand = CompletableFuture.completedFuture(null);
+        for (int firstRow = 0; firstRow < splitOptions.rows(); firstRow += rowsPerBand) {
+            int rows = Math.min(rowsPerBand, splitOptions.rows() - firstRow);
+            long decodeStart = System.nanoTime();
+            BufferedImage band = readBand(imageReader, subsampling, puzzleDimention, splitOptions, firstRow, rows);
+            long decodeTime = System.nanoTime() - decodeStart;
+            decodeNanos.add(decodeTime);
+            puzzleMetrics.recordSplit("decode", decodeTime);
+
+            List<CompletableFuture<Void>> fragments = new ArrayList<>();
+            for (int y = firstRow; y < firstRow + rows; y++) {
+                fragments.addAll(savePuzzleRow(contentId, band, y - firstRow, y, puzzleDimention, splitOptions,
+                        shuffledPuzzleIds, edgeStore, packWriter, atlas, cropNanos, encodeNanos, writeNanos));
             }
+            previousBand.join();
+            previousBand = CompletableFuture.allOf(fragments.toArray(CompletableFuture[]::new));
         }
-    }
+        previousBand.join();
+        if (atlas != null) {
+            fragmentAtlasService.save(id, atlas, splitOptions);
+        }
+        long splitTime = System.nanoTime() - startTime;
+        puzzleMetrics.recordSplit("total", splitTime);
+        log.info("Split image of user {} into {} {} fragments in {} ms (decode {} ms, crop {} ms, encode {} ms, write {} ms)",
+                id, shuffledPuzzleIds.size(), splitOptions.format(), TimeUnit.NANOSECONDS.toMillis(splitTime),
+                TimeUnit.NANOSECONDS.toMillis(decodeNanos.sum()), TimeUnit.NANOSECONDS.toMillis(cropNanos.sum()),
+                TimeUnit.NANOSECONDS.toMillis(encodeNanos.sum()), TimeUnit.NANOSECONDS.toMillis(writeNanos.sum()));
+    }
+
+    private List<CompletableFuture<Void>> savePuzzleRow(String contentId, BufferedImage band, int bandRow, int y,
+                                                        PuzzleDimentions puzzleDimention, SplitOptions splitOptions,
+                                                        List<Integer> shuffledPuzzleIds, EdgeStore edgeStore,
+                                                        FragmentPackWriter packWriter, BufferedImage atlas,
+                                                        LongAdder cropNanos, LongAdder encodeNanos,
+                                                        LongAdder writeNanos) {
+        List<CompletableFuture<Void>> fragments = new ArrayList<>();
+        for (int x = 0; x < splitOptions.columns(); x++) {
+            BufferedImage puzzleImage = band.getSubimage(
+                    x * puzzleDimention.puzzleWidth(),
+                    bandRow * puzzleDimention.puzzleHeight(),
+                    puzzleDimention.puzzleWidth(),
+                    puzzleDimention.puzzleHeight());
+            int position = y * splitOptions.columns() + x;
+            Integer puzzleId = shuffledPuzzleIds.get(position);
+
+            if (atlas != null) {
+                fragmentAtlasService.drawFragment(atlas, puzzleId, puzzleImage, splitOptions);
+            }
 
-    private PuzzleDimentions getPuzzleDimentions(UUID id, BufferedImage fullImage) {
-        int puzzleWidth = fullImage.getWidth() / puzzleConfig.numPuzzlesX();
-        int puzzleHeight = fullImage.getHeight() / puzzleConfig.numPuzzlesY();
-        puzzleSizeMap.put(id, new Pair<>(puzzleWidth, puzzleHeight));
-        return new PuzzleDimentions(puzzleWidth, puzzleHeight);
+            fragments.add(CompletableFuture.runAsync(() -> {
+                long cropStart = System.nanoTime();
+                edgeStore.put(position, FragmentEdges.of(puzzleImage));
+                long cropTime = System.nanoTime() - cropStart;
+                cropNanos.add(cropTime);
+                puzzleMetrics.recordSplit("crop", cropTime);
+                savePuzzleImage(contentId, position, puzzleImage, packWriter, splitOptions, encodeNanos, writeNanos);
+            }, fragmentWriterPool));
+        }
+        return fragments;
     }
 
-    private boolean checkIfTheUserFolderExists(UUID id) {
-        String filePath = puzzleConfig.pathToPuzzleImagesDirectory() + id.toString();
-        File file = new File(filePath);
-        return file.exists() && file.isDirectory();
+    private PuzzleDimentions getPuzzleDimentions(int imageWidth, int imageHeight, SplitOptions splitOptions) {
+        int puzzleWidth = imageWidth / splitOptions.columns();
+        int puzzleHeight = imageHeight / splitOptions.rows();
+        return new PuzzleDimentions(puzzleWidth, puzzleHeight);
     }
 
     @SneakyThrows
@@ -193,372 +324,279 @@ public class PuzzleService {
         }
     }
 
-    @SneakyThrows
-    private void savePuzzleImage(BufferedImage image, String imageName) {
-        String filePath = puzzleConfig.pathToPuzzleImagesDirectory() + imageName;
-        File outputFile = new File(filePath);
-
-        // Create the parent directories if they don't exist
-        Path outputDirectory = outputFile.toPath().getParent();
-        Files.createDirectories(outputDirectory);
-
-        // Save the image to disk
-        ImageIO.write(image, "jpg", outputFile);
-    }
-
-    public List<PuzzleDto> getPuzzles(UUID id) {
-        List<Puzzle> puzzles = puzzlesMap.get(id).values()
-                .stream()
-                .toList();
-        return puzzleDtoMapper.puzzleDtos(puzzles);
-    }
-
-    public List<PuzzleDto> assemblePuzzles(UUID id) {
-        List<Puzzle> puzzles = puzzlesMap.get(id).values()
-                .stream()
-                .toList();
-        assemblePuzzles(id, puzzles);
-        return puzzleDtoMapper.puzzleDtos(puzzles);
+    private void savePuzzleImage(String contentId, int position, BufferedImage image, FragmentPackWriter packWriter,
+                                 SplitOptions splitOptions, LongAdder encodeNanos, LongAdder writeNanos) {
+        long encodeStart = System.nanoTime();
+        byte[] imageBytes = fragmentImageWriter.encode(image, splitOptions.format(), splitOptions.quality());
+        long writeStart = System.nanoTime();
+        packWriter.write(position, imageBytes);
+        long writeEnd = System.nanoTime();
+        encodeNanos.add(writeStart - encodeStart);
+        writeNanos.add(writeEnd - writeStart);
+        puzzleMetrics.recordSplit("encode", writeStart - encodeStart);
+        puzzleMetrics.recordSplit("write", writeEnd - writeStart);
+        fragmentImageCache.put(contentId, position, imageBytes);
     }
 
-    public void assemblePuzzles(UUID id, List<Puzzle> puzzles) {
-        Map<Pair<Puzzle, Puzzle>, List<Adjacent>> adjacentListPuzzles = new ConcurrentHashMap<>();
-
-        List<Callable<Void>> tasks = puzzles.stream().<Callable<Void>>map(puzzle -> () -> {
-            puzzles.stream()
-                    .filter(puzzle2 -> puzzle.getId() != puzzle2.getId())
-                    .forEach(puzzle2 -> getAdjacents(adjacentListPuzzles, puzzle, puzzle2));
-            return null;
-        }).toList();
-
-        try {
-            executor.invokeAll(tasks);
-            log.info("All tasks are finished");
-        } catch (InterruptedException e) {
-            log.error("Error while invoking tasks", e);
-            executor.shutdown();
-            throw new RuntimeException(e);
-        }
-
-        Map<Pair<Puzzle, Puzzle>, Adjacent> adjacentPuzzles = new ConcurrentHashMap<>();
-        adjacentListPuzzles.forEach((pair, adjacents) -> {
-            Puzzle puzzle1 = pair.getFirst();
-            Puzzle puzzle2 = pair.getSecond();
-            Adjacent adjacent = adjacents.get(0);
-            if (adjacents.size() > 2)
-                throw new RuntimeException("There are more than 2 adjacents");
-            if (adjacents.size() > 1) {
-                adjacent = findCorrectAdjacent(adjacentListPuzzles, adjacents, puzzle1, puzzle2);
-            }
-            adjacentPuzzles.put(pair, adjacent);
-        });
-
-        Puzzle currentPuzzle = calculateTopLeftPuzzle(puzzles, adjacentPuzzles);
-        List<List<Puzzle>> puzzleRows = calculatePuzzleFragmentMatrix(adjacentPuzzles, currentPuzzle);
-        log.info("Puzzle rows: {}", puzzleRows);
-
-        int puzzleWidth = puzzleSizeMap.get(id).getFirst();
-        int puzzleHeight = puzzleSizeMap.get(id).getSecond();
-
-        updateCoordinatesOfCurrentFragments(puzzleRows, puzzleWidth, puzzleHeight);
-        log.info("Puzzles: {}", puzzleRows);
+    private Optional<PuzzleSession> findSession(UUID userId) {
+        Optional<PuzzleSession> session = puzzleSessionStore.get(userId);
+        // sessions restored after a restart claim their content again
+        session.ifPresent(fragmentContentStore::adopt);
+        return session;
     }
 
-    private List<List<Puzzle>> calculatePuzzleFragmentMatrix(Map<Pair<Puzzle, Puzzle>, Adjacent> adjacentPuzzles,
-                                                             Puzzle currentPuzzle) {
-        List<List<Puzzle>> puzzleRows = new ArrayList<>();
-        for (int i = 0; i < puzzleConfig.numPuzzlesY(); i++) {
-            List<Puzzle> puzzleRow = new ArrayList<>();
-            for (int j = 0; j < puzzleConfig.numPuzzlesX(); j++) {
-                puzzleRow.add(currentPuzzle);
-                Optional<Puzzle> nextPuzzle = getAdjacentPuzzle(adjacentPuzzles, currentPuzzle, Adjacent.RIGHT);
-                if (nextPuzzle.isPresent()) {
-                    currentPuzzle = nextPuzzle.get();
-                }
-            }
-            puzzleRows.add(puzzleRow);
-            Optional<Puzzle> nextPuzzle = getAdjacentPuzzle(adjacentPuzzles, puzzleRow.get(0), Adjacent.BOTTOM);
-            if (nextPuzzle.isPresent()) {
-                currentPuzzle = nextPuzzle.get();
-            }
-        }
-        return puzzleRows;
+    private PuzzleSession getSession(UUID userId) {
+        return findSession(userId)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Puzzle not found"));
     }
 
-    private Puzzle calculateTopLeftPuzzle(List<Puzzle> puzzles, Map<Pair<Puzzle, Puzzle>, Adjacent> adjacentPuzzles) {
-        Puzzle firstPuzzle = puzzles.get(0);
-        while (getAdjacentPuzzleInverted(adjacentPuzzles, firstPuzzle, Adjacent.LEFT).isPresent()) {
-            firstPuzzle = getAdjacentPuzzleInverted(adjacentPuzzles, firstPuzzle, Adjacent.LEFT).get();
-        }
-        while (getAdjacentPuzzleInverted(adjacentPuzzles, firstPuzzle, Adjacent.TOP).isPresent()) {
-            firstPuzzle = getAdjacentPuzzleInverted(adjacentPuzzles, firstPuzzle, Adjacent.TOP).get();
-        }
-        return firstPuzzle;
-    }
-
-    private Adjacent findCorrectAdjacent(Map<Pair<Puzzle, Puzzle>, List<Adjacent>> adjacentListPuzzles,
-                                         List<Adjacent> adjacents, Puzzle puzzle1, Puzzle puzzle2) {
-        log.info("Puzzle1: {}, Puzzle2: {}", puzzle1.getId(), puzzle2.getId());
-        Map<Adjacent, Double> error1 = calculateError(puzzle1, puzzle2, adjacents);
-        log.info("Error1: {}", error1);
-        List<Pair<Puzzle, Puzzle>> pairWithSameFirstButDifferentSecond = adjacentListPuzzles.keySet()
-                .stream()
-                .filter(p -> p.getFirst().getId() == puzzle1.getId() && p.getSecond().getId() != puzzle2.getId())
-                .toList();
-        log.info("Pair with same first but different second: {}", pairWithSameFirstButDifferentSecond);
-        Map<Adjacent, Double> error2 = new EnumMap<>(Adjacent.class);
-        calculateErrorForPairsWithSameFirst(adjacentListPuzzles, puzzle1, pairWithSameFirstButDifferentSecond, error2, adjacents);
-        log.info("Error2: {}", error2);
-        List<Adjacent> copyAdjacents = new ArrayList<>(adjacents);
-        removeExistingAdjacents(adjacents, error1, error2, copyAdjacents);
-        log.info("Copy adjacents: {}", copyAdjacents);
-        if (copyAdjacents.size() > 1) {
-            deleteWorseAdjacent(error1, copyAdjacents);
+    public List<PuzzleDto> getPuzzles(UUID id) {
+        return puzzleDtoMapper.puzzleDtos(getSession(id));
+    }
+
+    public List<PuzzleDto> assemblePuzzles(UUID id, boolean trace) {
+        return assemblePuzzles(id, trace, AssemblyListener.NONE);
+    }
+
+    public List<PuzzleDto> assemblePuzzles(UUID id, boolean trace, AssemblyListener assemblyListener) {
+        PuzzleSession session = getSession(id);
+        long revision = session.getRevision();
+        int[] placement = assemblePuzzles(session, trace, assemblyListener);
+        // the user may have moved, reset or uploaded again in the meantime, which wins over the assembly
+        PuzzleSession assembled = puzzleSessionStore.update(id, revision,
+                        storedSession -> storedSession.getBoard().setPlacement(placement))
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.CONFLICT,
+                        "Puzzle was changed while it was assembled"));
+        return puzzleDtoMapper.puzzleDtos(assembled);
+    }
+
+    // Placement of the session's fragment ids, the session itself is left unchanged
+    private int[] assemblePuzzles(PuzzleSession session, boolean trace, AssemblyListener assemblyListener) {
+        UUID id = session.getUserId();
+        FragmentContent content = fragmentContentStore.adopt(session);
+        AssemblyStrategy assemblyStrategy = getAssemblyStrategy(puzzleConfig.assemblyStrategy());
+        PuzzleBoard board = session.getBoard();
+        int[] sharedPlacement = trace ? null : content.getPlacements().get(assemblyStrategy.getType());
+        if (sharedPlacement != null) {
+            log.info("Reusing {} assembly of content {} for user {}", assemblyStrategy.getType(), content.getId(), id);
+            return getFragmentPlacement(sharedPlacement, board);
         }
-        return copyAdjacents.get(0);
-    }
-
-    private void calculateErrorForPairsWithSameFirst(Map<Pair<Puzzle, Puzzle>, List<Adjacent>> adjacentListPuzzles,
-                                                     Puzzle puzzle1, List<Pair<Puzzle, Puzzle>> pairWithSameFirstButDifferentSecond,
-                                                     Map<Adjacent, Double> error2, List<Adjacent> adjacents) {
-        pairWithSameFirstButDifferentSecond.forEach(pair2 -> {
-            Puzzle puzzle3 = pair2.getSecond();
-            List<Adjacent> adjacents2 = adjacentListPuzzles.get(pair2);
-            if (adjacents2.size() != 1) {
-                List<Adjacent> commonAdjacents = adjacents.stream()
-                        .filter(adjacents2::contains)
-                        .toList();
-                if (commonAdjacents.size() > 1) {
-                    log.info("There are more than 1 common adjacents: {}", commonAdjacents);
-                    log.info("Adjacents: {}", adjacents);
-                    log.info("Adjacents pair2: {}", adjacents2);
-                    log.info("Pair2: {}", pair2);
-                    throw new RuntimeException("There are more than 1 adjacents");
-                }
-            }
-            error2.put(adjacents2.get(0), calculateError(puzzle1, puzzle3, adjacents2).get(adjacents2.get(0)));
-        });
-    }
 
-    private void getAdjacents(Map<Pair<Puzzle, Puzzle>, List<Adjacent>> adjacentListPuzzles, Puzzle puzzle, Puzzle puzzle2) {
-        List<Adjacent> adjacents = areAdjacent(puzzle, puzzle2);
-        if (!adjacents.isEmpty()) {
-            adjacentListPuzzles.put(new Pair<>(puzzle, puzzle2), adjacents);
+        // sessions stored before the budget was lowered
+        if (DissimilarityMatrix.getBytes(session.getFragmentCount()) > puzzleConfig.assemblyMemoryBudget().toBytes()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Puzzle has too many fragments to be assembled");
         }
-    }
-
-    private Map<Adjacent, Double> calculateError(Puzzle puzzle1, Puzzle puzzle2, List<Adjacent> adjacents) {
-        return adjacents.stream()
-                .collect(Collectors.toMap(
-                        adjacent -> adjacent,
-                        adjacent -> calculateError(puzzle1, puzzle2, adjacent),
-                        (a, b) -> b, () -> new EnumMap<>(Adjacent.class))
-                );
-    }
-
-    private Double calculateError(Puzzle puzzle1, Puzzle puzzle2, Adjacent adjacent) {
-        return switch (adjacent) {
-            case LEFT -> getMeanDiff(getLeftEdge(getFragmentImage(puzzle1)), getRightEdge(getFragmentImage(puzzle2)));
-            case TOP -> getMeanDiff(getTopEdge(getFragmentImage(puzzle1)), getBottomEdge(getFragmentImage(puzzle2)));
-            case RIGHT -> getMeanDiff(getRightEdge(getFragmentImage(puzzle1)), getLeftEdge(getFragmentImage(puzzle2)));
-            case BOTTOM -> getMeanDiff(getBottomEdge(getFragmentImage(puzzle1)), getTopEdge(getFragmentImage(puzzle2)));
-            case null -> throw new RuntimeException("Adjacent not found");
-        };
-    }
-
-    private Optional<Puzzle> getAdjacentPuzzle(Map<Pair<Puzzle, Puzzle>, Adjacent> adjacentPuzzles, Puzzle firstPuzzle, Adjacent adjacent) {
-        List<Puzzle> puzzleList = adjacentPuzzles.entrySet()
-                .stream()
-                .filter(entry -> entry.getKey().getFirst().getId() == firstPuzzle.getId() && entry.getValue() == adjacent)
-                .map(entry -> entry.getKey().getSecond())
-                .toList();
-
-        return checkMorePreciseAdjacent(firstPuzzle, adjacent, puzzleList);
-    }
-
-    private Optional<Puzzle> getAdjacentPuzzleInverted(Map<Pair<Puzzle, Puzzle>, Adjacent> adjacentPuzzles, Puzzle firstPuzzle, Adjacent adjacent) {
-        return adjacentPuzzles.entrySet()
-                .stream()
-                .filter(entry -> {
-                    Puzzle first = entry.getKey().getFirst();
-                    Puzzle second = entry.getKey().getSecond();
-                    Adjacent value = entry.getValue();
-
-                    if (adjacent == Adjacent.LEFT || adjacent == Adjacent.TOP) {
-                        return first.getId() == firstPuzzle.getId() && value == adjacent;
-                    } else {
-                        return second.getId() == firstPuzzle.getId() && value == adjacent;
-                    }
-                })
-                .map(entry -> {
-                    if (adjacent == Adjacent.LEFT || adjacent == Adjacent.TOP) {
-                        return entry.getKey().getSecond();
-                    } else {
-                        return entry.getKey().getFirst();
+        long scoringStart = System.nanoTime();
+        EdgeStore edgeStore = getEdgeStore(session);
+        DissimilarityMatrix dissimilarityMatrix = pairScorer.score(edgeStore, session.getFragmentCount(), trace,
+                assemblyListener::onScoringProgress);
+        log.info("Assembling puzzles of user {} with {} strategy", id, assemblyStrategy.getType());
+        long assemblyStart = System.nanoTime();
+        int[] placement = assemblyStrategy.assemble(dissimilarityMatrix, board.getColumns(), board.getRows(),
+                (positions, cells) -> {
+                    if (assemblyListener.isListening()) {
+                        assemblyListener.onPlaced(IntStream.range(0, positions.length)
+                                .mapToObj(i -> puzzleDtoMapper.puzzleDto(session, board.getSolution()[positions[i]],
+                                        cells[i]))
+                                .toList());
                     }
-                })
-                .findFirst();
-
-    }
-
-    private Optional<Puzzle> checkMorePreciseAdjacent(Puzzle firstPuzzle, Adjacent adjacent, List<Puzzle> puzzleList) {
-        Map<Puzzle, Double> puzzleDifference = new HashMap<>();
-
-        for (Puzzle puzzle : puzzleList) {
-            BufferedImage image1 = getFragmentImage(firstPuzzle);
-            BufferedImage image2 = getFragmentImage(puzzle);
-            double difference = switch (adjacent) {
-                case LEFT -> getMeanDiff(getLeftEdge(image1), getRightEdge(image2));
-                case TOP -> getMeanDiff(getTopEdge(image1), getBottomEdge(image2));
-                case RIGHT -> getMeanDiff(getRightEdge(image1), getLeftEdge(image2));
-                case null, default ->  // Adjacent.BOTTOM
-                        getMeanDiff(getBottomEdge(image1), getTopEdge(image2));
-            };
-
-            puzzleDifference.put(puzzle, difference);
-        }
-
-        return puzzleDifference.entrySet()
-                .stream()
-                .min(Map.Entry.comparingByValue())
-                .map(Map.Entry::getKey);
-    }
-
-
-    private List<Adjacent> areAdjacent(Puzzle puzzle1, Puzzle puzzle2) {
-        BufferedImage image1 = getFragmentImage(puzzle1);
-        BufferedImage image2 = getFragmentImage(puzzle2);
-        List<Adjacent> adjacents = new ArrayList<>();
+                });
+        long assemblyEnd = System.nanoTime();
+        puzzleMetrics.recordAssemble("scoring", assemblyStart - scoringStart);
+        puzzleMetrics.recordAssemble("placement", assemblyEnd - assemblyStart);
 
-        if (areEdgesMatching(getRightEdge(image1), getLeftEdge(image2))) {
-            adjacents.add(Adjacent.RIGHT);
+        if (trace) {
+            log.info("Placement of user {}: {}", id, Arrays.toString(placement));
         }
-
-        if (areEdgesMatching(getLeftEdge(image1), getRightEdge(image2))) {
-            adjacents.add(Adjacent.LEFT);
+        content.getPlacements().put(assemblyStrategy.getType(), placement);
+        int[] fragmentPlacement = getFragmentPlacement(placement, board);
+        PuzzleBoard assembledBoard = new PuzzleBoard(board.getColumns(), board.getRows(), board.getSolution());
+        assembledBoard.setPlacement(fragmentPlacement);
+        solverDiagnostics.recordAssembly(id, assemblyStrategy.getType(), dissimilarityMatrix,
+                assembledBoard.getCorrectEdges(), assembledBoard.getTotalEdges(),
+                assemblyStart - scoringStart, assemblyEnd - assemblyStart);
+        return fragmentPlacement;
+    }
+
+    // The solver works on grid positions, the board on the session's fragment ids
+    private static int[] getFragmentPlacement(int[] positionPlacement, PuzzleBoard board) {
+        int[] solution = board.getSolution();
+        int[] placement = new int[positionPlacement.length];
+        for (int i = 0; i < placement.length; i++) {
+            placement[i] = solution[positionPlacement[i]];
         }
+        return placement;
+    }
 
-        if (areEdgesMatching(getBottomEdge(image1), getTopEdge(image2))) {
-            adjacents.add(Adjacent.BOTTOM);
+    public MoveResultDto movePuzzle(UUID userId, MoveDto moveDto) {
+        PuzzleSession session = getSession(userId);
+        PuzzleBoard board = session.getBoard();
+        if (!session.containsFragment(moveDto.id())) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Puzzle not found");
         }
-
-        if (areEdgesMatching(getTopEdge(image1), getBottomEdge(image2))) {
-            adjacents.add(Adjacent.TOP);
+        if (moveDto.column() < 0 || moveDto.column() >= board.getColumns()
+                || moveDto.row() < 0 || moveDto.row() >= board.getRows()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Cell is outside of the board");
         }
-
-        return adjacents;
-    }
-
-    private int[] getRightEdge(BufferedImage image) {
-        int height = image.getHeight();
-        return IntStream.range(0, height)
-                .map(y -> image.getRGB(image.getWidth() - 1, y))
-                .toArray();
-    }
-
-    private int[] getLeftEdge(BufferedImage image) {
-        int height = image.getHeight();
-        return IntStream.range(0, height)
-                .map(y -> image.getRGB(0, y))
-                .toArray();
+        AtomicReference<List<EdgeStatus>> changedEdges = new AtomicReference<>();
+        // a reset, upload, assembly or another move since the read wins over this move
+        PuzzleBoard movedBoard = puzzleSessionStore.update(userId, session.getRevision(), storedSession ->
+                        changedEdges.set(storedSession.getBoard().move(moveDto.id(), moveDto.column(), moveDto.row())))
+                .orElseThrow(() -> puzzleSessionStore.get(userId).isPresent()
+                        ? new ResponseStatusException(HttpStatus.CONFLICT, "Puzzle was changed during the move")
+                        : new ResponseStatusException(HttpStatus.NOT_FOUND, "Puzzle not found"))
+                .getBoard();
+        return MoveResultDto.builder()
+                .changedEdges(changedEdges.get())
+                .correctEdges(movedBoard.getCorrectEdges())
+                .totalEdges(movedBoard.getTotalEdges())
+                .solved(movedBoard.isSolved())
+                .build();
     }
 
-    private int[] getTopEdge(BufferedImage image) {
-        int width = image.getWidth();
-        return IntStream.range(0, width)
-                .map(x -> image.getRGB(x, 0))
-                .toArray();
+    private AssemblyStrategy getAssemblyStrategy(AssemblyStrategyType type) {
+        return assemblyStrategies.stream()
+                .filter(assemblyStrategy -> assemblyStrategy.getType() == type)
+                .findFirst()
+                .orElseThrow(() -> new RuntimeException("Assembly strategy not found: " + type));
     }
 
-    private int[] getBottomEdge(BufferedImage image) {
-        int width = image.getWidth();
-        return IntStream.range(0, width)
-                .map(x -> image.getRGB(x, image.getHeight() - 1))
-                .toArray();
+    private EdgeStore getEdgeStore(PuzzleSession session) {
+        String contentId = session.getContentId();
+        return fragmentEdgeCache.get(contentId)
+                .orElseGet(() -> {
+                    log.info("Edges of content {} are not cached, decoding fragment images", contentId);
+                    EdgeStore edgeStore = new EdgeStore(session.getFragmentCount(),
+                            session.getFragmentWidth(), session.getFragmentHeight());
+                    FragmentPack pack = fragmentContentStore.getPack(fragmentContentStore.adopt(session));
+                    for (int position = 0; position < session.getFragmentCount(); position++) {
+                        edgeStore.put(position, FragmentEdges.of(getTileImage(pack, position)));
+                    }
+                    fragmentEdgeCache.put(contentId, edgeStore);
+                    return edgeStore;
+                });
     }
 
-    private boolean areEdgesMatching(int[] edge1, int[] edge2) {
-        // Compare the edges by matching the colors of corresponding pixels
-        log.info("Comparing edges of length: {} and {}", edge1.length, edge2.length);
-        // use mean percentage of color difference
-        double meanDiff = getMeanDiff(edge1, edge2);
-        log.info("Mean difference: {}", meanDiff);
-        return meanDiff <= puzzleConfig.meanErrorProbabilityThreshold();
+    private boolean areEdgesMatching(EdgeStore edgeStore, int fragment1, Adjacent side, int fragment2) {
+        // use mean percentage of color difference, stopping as soon as the threshold is decided
+        puzzleMetrics.countCheckComparison();
+        return edgeComparator.isMatching(edgeStore, fragment1, side, fragment2,
+                puzzleConfig.meanErrorProbabilityThreshold());
     }
 
     @SneakyThrows
-    public BufferedImage getFragmentImage(Puzzle puzzle) {
-        String filePath = puzzleConfig.pathToPuzzleImagesDirectory() + puzzle.getImageName();
-        return ImageIO.read(new File(filePath));
+    private BufferedImage getTileImage(FragmentPack pack, int position) {
+        puzzleMetrics.countFragmentDecode();
+        return ImageIO.read(new ByteArrayInputStream(pack.read(position)));
     }
 
 
     @SneakyThrows
-    public byte[] getPuzzleImage(UUID userId, int id) {
-        Map<Integer, Puzzle> puzzles = puzzlesMap.get(userId);
-        if (puzzles == null) {
-            throw new Exception("Puzzle not found");
-        }
-        Puzzle puzzle = puzzles.get(id);
-        if (puzzle == null) {
+    public FragmentImage getPuzzleImage(UUID userId, int id) {
+        PuzzleSession session = getSession(userId);
+        if (!session.containsFragment(id)) {
             throw new Exception("Puzzle not found");
         }
-        String filePath = puzzleConfig.pathToPuzzleImagesDirectory() + puzzle.getImageName();
-
-        return Files.readAllBytes(Paths.get(filePath));
+        int position = session.getBoard().getSolutionPosition(id);
+        FragmentPack pack = fragmentContentStore.getPack(fragmentContentStore.adopt(session));
+        // streamed straight from the mapped pack instead of being read into the cache
+        Resource image = fragmentImageCache.get(session.getContentId(), position)
+                .<Resource>map(ByteArrayResource::new)
+                .orElseGet(() -> new ByteBufferResource(pack.slice(position),
+                        "fragment " + position + " of content " + session.getContentId()));
+        return new FragmentImage(image, session.getFormat().getMediaType(),
+                image.contentLength(), session.getContentId(), position);
     }
 
     @SneakyThrows
-    public boolean checkPuzzles(UUID userId, List<PuzzleCheckDto> puzzleCheckDtos) {
-        Map<Integer, Puzzle> puzzles = puzzlesMap.get(userId);
-        if (puzzles == null) {
+    public boolean checkPuzzles(UUID userId, List<PuzzleCheckDto> puzzleCheckDtos, CheckMode checkMode,
+                                boolean trace) {
+        Optional<PuzzleSession> session = findSession(userId);
+        if (session.isEmpty()) {
             return false;
         }
-        log.info("Checking puzzles for user: {}", userId);
-        PuzzleDimentions puzzleDimentions = getPuzzleDimentions(userId);
-        log.info("Puzzle width: {}, height: {}", puzzleDimentions.puzzleWidth(), puzzleDimentions.puzzleHeight());
+        long checkStart = System.nanoTime();
+        boolean correct = checkMode == CheckMode.EXACT
+                ? checkPuzzleSolution(puzzleCheckDtos, session.get().getBoard())
+                : checkPuzzlesVisually(session.get(), puzzleCheckDtos, trace);
+        long checkTime = System.nanoTime() - checkStart;
+        puzzleMetrics.recordCheck(checkMode, correct, checkTime);
+        solverDiagnostics.recordCheck(userId, checkMode, correct, checkTime);
+        return correct;
+    }
+
+    private boolean checkPuzzlesVisually(PuzzleSession session, List<PuzzleCheckDto> puzzleCheckDtos, boolean trace) {
+        PuzzleDimentions puzzleDimentions = session.getPuzzleDimentions();
         puzzleCheckDtos.sort((o1, o2) -> {
             if (Math.abs(o1.y() - o2.y()) < puzzleDimentions.puzzleHeight() / 2) {
                 return o1.x() - o2.x();
             }
             return o1.y() - o2.y();
         });
-        List<List<Puzzle>> puzzleMatrix = getPuzzleMatrix(puzzleCheckDtos, puzzles);
-        log.info("Puzzle matrix: {}", puzzleMatrix);
-        return checkPuzzleMatrix(puzzleMatrix);
-    }
-
-    private List<List<Puzzle>> getPuzzleMatrix(List<PuzzleCheckDto> puzzleCheckDtos, Map<Integer, Puzzle> puzzles) {
-        List<Puzzle> puzzleList = puzzleCheckDtoMapper.puzzleCheckDtos(puzzleCheckDtos)
-                .stream()
-                .map(puzzleCheckDto -> puzzles.get(puzzleCheckDto.getId()))
-                .toList();
-        List<List<Puzzle>> puzzleMatrix = new ArrayList<>();
-        for (int i = 0; i < puzzleConfig.numPuzzlesY(); i++) {
-            puzzleMatrix.add(new ArrayList<>());
-            for (int j = 0; j < puzzleConfig.numPuzzlesX(); j++) {
-                puzzleMatrix.get(i).add(puzzleList.get(i * puzzleConfig.numPuzzlesX() + j));
+        int[] fragmentIds = puzzleCheckDtoMapper.fragmentIds(puzzleCheckDtos);
+        if (fragmentIds.length != session.getFragmentCount()
+                || Arrays.stream(fragmentIds).anyMatch(fragmentId -> !session.containsFragment(fragmentId))) {
+            return false;
+        }
+        int[][] puzzleMatrix = getPuzzleMatrix(fragmentIds, session.getBoard());
+        if (trace) {
+            log.info("Puzzle matrix of user {}: {}", session.getUserId(), Arrays.deepToString(puzzleMatrix));
+        }
+        return checkPuzzleMatrix(puzzleMatrix, getEdgeStore(session), trace);
+    }
+
+    private boolean checkPuzzleSolution(List<PuzzleCheckDto> puzzleCheckDtos, PuzzleBoard board) {
+        int[] solution = board.getSolution();
+        if (puzzleCheckDtos.size() != solution.length) {
+            return false;
+        }
+        IntSummaryStatistics xs = puzzleCheckDtos.stream().mapToInt(PuzzleCheckDto::x).summaryStatistics();
+        IntSummaryStatistics ys = puzzleCheckDtos.stream().mapToInt(PuzzleCheckDto::y).summaryStatistics();
+        // the board may be scaled and shifted by the client, so the grid pitch is taken from the pieces' extent
+        float columnPitch = (float) (xs.getMax() - xs.getMin()) / Math.max(1, board.getColumns() - 1);
+        float rowPitch = (float) (ys.getMax() - ys.getMin()) / Math.max(1, board.getRows() - 1);
+        boolean[] occupied = new boolean[solution.length];
+        for (PuzzleCheckDto puzzleCheckDto : puzzleCheckDtos) {
+            int column = columnPitch > 0 ? Math.round((puzzleCheckDto.x() - xs.getMin()) / columnPitch) : 0;
+            int row = rowPitch > 0 ? Math.round((puzzleCheckDto.y() - ys.getMin()) / rowPitch) : 0;
+            if (column < 0 || column >= board.getColumns() || row < 0 || row >= board.getRows()) {
+                return false;
+            }
+            int position = row * board.getColumns() + column;
+            if (occupied[position] || solution[position] != puzzleCheckDto.id()) {
+                return false;
             }
+            occupied[position] = true;
         }
-        return puzzleMatrix;
+        return true;
     }
 
-    private PuzzleDimentions getPuzzleDimentions(UUID userId) {
-        int puzzleWidth = puzzleSizeMap.get(userId).first();
-        int puzzleHeight = puzzleSizeMap.get(userId).second();
-        return new PuzzleDimentions(puzzleWidth, puzzleHeight);
+    // Holds the fragments' grid positions, which is how the shared edges are indexed
+    private int[][] getPuzzleMatrix(int[] fragmentIds, PuzzleBoard board) {
+        int[][] puzzleMatrix = new int[board.getRows()][board.getColumns()];
+        for (int i = 0; i < board.getRows(); i++) {
+            for (int j = 0; j < board.getColumns(); j++) {
+                puzzleMatrix[i][j] = board.getSolutionPosition(fragmentIds[i * board.getColumns() + j]);
+            }
+        }
+        return puzzleMatrix;
     }
 
-    private boolean checkPuzzleMatrix(List<List<Puzzle>> puzzleMatrix) {
-        for (int i = 0; i < puzzleMatrix.size(); i++) {
-            for (int j = 0; j < puzzleMatrix.get(i).size(); j++) {
-                log.info("Checking puzzle: {}", puzzleMatrix.get(i).get(j));
-                if (i > 0 && (!checkPuzzleBottom(puzzleMatrix.get(i - 1).get(j), puzzleMatrix.get(i).get(j)))) {
-                    log.info("Puzzle bottom check failed for puzzle: {} and puzzle: {}", puzzleMatrix.get(i - 1).get(j), puzzleMatrix.get(i).get(j));
+    private boolean checkPuzzleMatrix(int[][] puzzleMatrix, EdgeStore edgeStore, boolean trace) {
+        for (int i = 0; i < puzzleMatrix.length; i++) {
+            for (int j = 0; j < puzzleMatrix[i].length; j++) {
+                if (i > 0 && (!checkPuzzleBottom(edgeStore, puzzleMatrix[i - 1][j], puzzleMatrix[i][j]))) {
+                    log.info("Puzzle bottom check failed for puzzle: {} and puzzle: {}", puzzleMatrix[i - 1][j], puzzleMatrix[i][j]);
+                    if (trace) {
+                        edgeComparator.traceMismatches(edgeStore, puzzleMatrix[i - 1][j], Adjacent.BOTTOM, puzzleMatrix[i][j]);
+                    }
                     return false;
                 }
-                if (j > 0 && (!checkPuzzleRight(puzzleMatrix.get(i).get(j - 1), puzzleMatrix.get(i).get(j)))) {
-                    log.info("Puzzle right check failed for puzzle: {} and puzzle: {}", puzzleMatrix.get(i).get(j - 1), puzzleMatrix.get(i).get(j));
+                if (j > 0 && (!checkPuzzleRight(edgeStore, puzzleMatrix[i][j - 1], puzzleMatrix[i][j]))) {
+                    log.info("Puzzle right check failed for puzzle: {} and puzzle: {}", puzzleMatrix[i][j - 1], puzzleMatrix[i][j]);
+                    if (trace) {
+                        edgeComparator.traceMismatches(edgeStore, puzzleMatrix[i][j - 1], Adjacent.RIGHT, puzzleMatrix[i][j]);
+                    }
                     return false;
                 }
             }
@@ -566,28 +604,28 @@ public class PuzzleService {
         return true;
     }
 
-    private boolean checkPuzzleRight(Puzzle puzzleLeft, Puzzle puzzleRight) {
-        log.info("Checking puzzle right for puzzle: {} and puzzle: {}", puzzleLeft, puzzleRight);
-        BufferedImage fragmentLeft = getFragmentImage(puzzleLeft);
-        BufferedImage fragmentRight = getFragmentImage(puzzleRight);
-        int[] edgeLeft = getRightEdge(fragmentLeft);
-        int[] edgeRight = getLeftEdge(fragmentRight);
-        return areEdgesMatching(edgeLeft, edgeRight);
+    private boolean checkPuzzleRight(EdgeStore edgeStore, int puzzleLeft, int puzzleRight) {
+        return areEdgesMatching(edgeStore, puzzleLeft, Adjacent.RIGHT, puzzleRight);
     }
 
-    private boolean checkPuzzleBottom(Puzzle puzzleTop, Puzzle puzzleBottom) {
-        log.info("Checking puzzle bottom for puzzle: {} and puzzle: {}", puzzleTop, puzzleBottom);
-        BufferedImage fragmentTop = getFragmentImage(puzzleTop);
-        BufferedImage fragmentBottom = getFragmentImage(puzzleBottom);
-        int[] edgeTop = getBottomEdge(fragmentTop);
-        int[] edgeBottom = getTopEdge(fragmentBottom);
-        return areEdgesMatching(edgeTop, edgeBottom);
+    private boolean checkPuzzleBottom(EdgeStore edgeStore, int puzzleTop, int puzzleBottom) {
+        return areEdgesMatching(edgeStore, puzzleTop, Adjacent.BOTTOM, puzzleBottom);
     }
 
 
     public void resetPuzzles(UUID userId) {
-        puzzlesMap.remove(userId);
-        puzzleSizeMap.remove(userId);
+        puzzleSessionStore.remove(userId);
+        cleanUpSession(userId);
+    }
+
+    @EventListener
+    public void onSessionExpired(PuzzleSessionExpiredEvent event) {
+        cleanUpSession(event.userId());
+    }
+
+    // fragments are only deleted once no other session shares them
+    private void cleanUpSession(UUID userId) {
+        fragmentContentStore.releaseAll(userId);
         deletePuzzleImages(userId);
     }
 }
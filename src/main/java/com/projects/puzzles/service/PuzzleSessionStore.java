@@ -0,0 +1,31 @@
+package com.projects.puzzles.service;
+
+import com.projects.puzzles.model.PuzzleSession;
+
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+
+/**
+ * Keeps the board state of every session. Sessions idle for longer than the configured
+ * timeout are dropped and announced with a {@link com.projects.puzzles.model.PuzzleSessionExpiredEvent},
+ * so that their fragment files and caches can be cleaned up.
+ */
+public interface PuzzleSessionStore {
+    Optional<PuzzleSession> get(UUID userId);
+
+    // must be called again after the session was changed, stores may keep a copy
+    void put(PuzzleSession session);
+
+    // Applies the change and stores the session, unless it was put or removed since it was read with this revision
+    Optional<PuzzleSession> update(UUID userId, long revision, Consumer<PuzzleSession> change);
+
+    void remove(UUID userId);
+
+    int size();
+
+    static long newRevision() {
+        return ThreadLocalRandom.current().nextLong();
+    }
+}
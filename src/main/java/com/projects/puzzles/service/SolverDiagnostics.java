@@ -0,0 +1,91 @@
+package com.projects.puzzles.service;
+
+import com.projects.puzzles.utility.Adjacent;
+import com.projects.puzzles.utility.AssemblyStrategyType;
+import com.projects.puzzles.utility.CheckMode;
+import com.projects.puzzles.utility.DissimilarityMatrix;
+import com.projects.puzzles.utility.PuzzleConfig;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Logs solver runs off the request path. Assembly summaries are reduced to a few numbers per side
+ * on the solver thread, so the queue never holds on to a matrix; they are logged on a single
+ * background thread, and when it falls behind new summaries are dropped and counted instead of
+ * slowing the solver down.
+ */
+@Component
+@Slf4j
+public class SolverDiagnostics {
+    private final PuzzleConfig puzzleConfig;
+    private final ThreadPoolExecutor executor;
+    private final AtomicLong droppedSummaries = new AtomicLong();
+
+    public SolverDiagnostics(PuzzleConfig puzzleConfig) {
+        this.puzzleConfig = puzzleConfig;
+        this.executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(puzzleConfig.diagnosticsQueueCapacity()),
+                new CustomizableThreadFactory("solver-diagnostics-"),
+                (task, executor) -> droppedSummaries.incrementAndGet());
+    }
+
+    @PreDestroy
+    public void destroy() {
+        executor.shutdown();
+    }
+
+    public void recordAssembly(UUID userId, AssemblyStrategyType strategyType, DissimilarityMatrix dissimilarityMatrix,
+                               int correctEdges, int totalEdges, long scoringNanos, long assemblyNanos) {
+        StringBuilder summary = new StringBuilder();
+        for (Adjacent side : Adjacent.values()) {
+            summary.append(' ').append(summarizeSide(dissimilarityMatrix, side));
+        }
+        String sides = summary.toString();
+        executor.execute(() -> log.info(
+                "Assembly of user {} with {} strategy: {}/{} edges correct, scoring {} ms, assembly {} ms,{}{}",
+                userId, strategyType, correctEdges, totalEdges,
+                TimeUnit.NANOSECONDS.toMillis(scoringNanos), TimeUnit.NANOSECONDS.toMillis(assemblyNanos),
+                sides, getDroppedSummaries()));
+    }
+
+    public void recordCheck(UUID userId, CheckMode checkMode, boolean correct, long checkNanos) {
+        executor.execute(() -> log.info("Check of user {} in {} mode: {} in {} us{}",
+                userId, checkMode, correct ? "correct" : "incorrect",
+                TimeUnit.NANOSECONDS.toMicros(checkNanos), getDroppedSummaries()));
+    }
+
+    // Best match statistics of one side: how clear the winners are and how many pass the threshold
+    private String summarizeSide(DissimilarityMatrix dissimilarityMatrix, Adjacent side) {
+        int size = dissimilarityMatrix.size();
+        int[] bestMatches = dissimilarityMatrix.bestMatches(side);
+        double bestSum = 0;
+        float bestMax = 0;
+        int belowThreshold = 0;
+        for (int fragment = 0; fragment < size; fragment++) {
+            if (bestMatches[fragment] < 0) {
+                continue;
+            }
+            float best = dissimilarityMatrix.get(side, fragment, bestMatches[fragment]);
+            bestSum += best;
+            bestMax = Math.max(bestMax, best);
+            if (best <= puzzleConfig.meanErrorProbabilityThreshold()) {
+                belowThreshold++;
+            }
+        }
+        return "%s[best mean %.3f max %.3f, %d/%d below threshold]".formatted(
+                side, size == 0 ? 0 : bestSum / size, bestMax, belowThreshold, size);
+    }
+
+    private String getDroppedSummaries() {
+        long dropped = droppedSummaries.getAndSet(0);
+        return dropped == 0 ? "" : " (%d summaries dropped)".formatted(dropped);
+    }
+}
@@ -0,0 +1,110 @@
+package com.projects.puzzles.service;
+
+import com.projects.puzzles.utility.Adjacent;
+import com.projects.puzzles.utility.EdgeStore;
+import com.projects.puzzles.utility.FragmentEdges;
+import com.projects.puzzles.utility.FragmentFormat;
+import com.projects.puzzles.utility.PuzzleConfig;
+import lombok.RequiredArgsConstructor;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.stereotype.Component;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads the ImageIO plugins and codecs and lets the JIT compile the edge comparator on synthetic fragments,
+ * so that the first upload and assembly of a new instance do not pay for it. Runners complete before Spring Boot
+ * reports the readiness state {@code ACCEPTING_TRAFFIC}, so the instance only turns ready once warmed up.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class StartupWarmUp implements ApplicationRunner {
+    private static final int COLUMNS = 4;
+    private static final int ROWS = 4;
+    private static final int FRAGMENT_SIDE = 64;
+
+    private final PuzzleConfig puzzleConfig;
+    private final FragmentImageWriter fragmentImageWriter;
+    private final EdgeComparator edgeComparator;
+    private final ConfigurableApplicationContext applicationContext;
+
+    // A gradient with a little noise, so that neighbouring fragments match and the others do not
+    private static BufferedImage syntheticImage() {
+        Random random = new Random(1);
+        BufferedImage image = new BufferedImage(COLUMNS * FRAGMENT_SIDE, ROWS * FRAGMENT_SIDE,
+                BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                int red = (x + random.nextInt(8)) & 0xFF;
+                int green = (y + random.nextInt(8)) & 0xFF;
+                int blue = (x + y) / 2 & 0xFF;
+                image.setRGB(x, y, red << 16 | green << 8 | blue);
+            }
+        }
+        return image;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (puzzleConfig.warmUpIterations() > 0) {
+            long start = System.nanoTime();
+            BufferedImage image = syntheticImage();
+            warmUpImageIO(image);
+            long checksum = warmUpEdgeComparator(image);
+            log.info("Warmed up ImageIO and the edge comparator in {} ms (checksum {})",
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), checksum);
+        }
+        if (puzzleConfig.exitAfterWarmUp()) {
+            log.info("Exiting after warm-up");
+            System.exit(SpringApplication.exit(applicationContext));
+        }
+    }
+
+    // Initialises the plugin registry and runs every available codec once, the way uploads and fragments use them
+    @SneakyThrows
+    private void warmUpImageIO(BufferedImage image) {
+        BufferedImage fragment = image.getSubimage(0, 0, FRAGMENT_SIDE, FRAGMENT_SIDE);
+        for (FragmentFormat format : FragmentFormat.values()) {
+            if (format != FragmentFormat.JPEG && format != puzzleConfig.fragmentFormat() || !format.isAvailable()) {
+                continue;
+            }
+            byte[] bytes = fragmentImageWriter.encode(fragment, format, puzzleConfig.jpegQuality());
+            if (ImageIO.read(new ByteArrayInputStream(bytes)) == null) {
+                throw new RuntimeException("No reader for fragment format " + format);
+            }
+        }
+    }
+
+    private long warmUpEdgeComparator(BufferedImage image) {
+        int size = COLUMNS * ROWS;
+        EdgeStore edgeStore = new EdgeStore(size, FRAGMENT_SIDE, FRAGMENT_SIDE);
+        for (int position = 0; position < size; position++) {
+            edgeStore.put(position, FragmentEdges.of(image.getSubimage(position % COLUMNS * FRAGMENT_SIDE,
+                    position / COLUMNS * FRAGMENT_SIDE, FRAGMENT_SIDE, FRAGMENT_SIDE)));
+        }
+        Adjacent[] sides = Adjacent.values();
+        long checksum = 0;
+        for (int i = 0; i < puzzleConfig.warmUpIterations(); i++) {
+            int fragment1 = i % size;
+            int fragment2 = (i / size + fragment1 + 1) % size;
+            Adjacent side = sides[i % sides.length];
+            checksum += edgeComparator.getSignatureDiff(edgeStore, fragment1, side, fragment2, Integer.MAX_VALUE);
+            if (edgeComparator.isMatching(edgeStore, fragment1, side, fragment2,
+                    puzzleConfig.meanErrorProbabilityThreshold())) {
+                checksum++;
+            }
+            checksum += (long) (edgeComparator.getMeanDiff(edgeStore, fragment1, side, fragment2) * FRAGMENT_SIDE);
+        }
+        return checksum;
+    }
+}
@@ -1,5 +1,14 @@
 package com.projects.puzzles.utility;
 
 public enum Adjacent {
-    LEFT, RIGHT, TOP, BOTTOM
+    LEFT, RIGHT, TOP, BOTTOM;
+
+    public Adjacent opposite() {
+        return switch (this) {
+            case LEFT -> RIGHT;
+            case RIGHT -> LEFT;
+            case TOP -> BOTTOM;
+            case BOTTOM -> TOP;
+        };
+    }
 }
@@ -0,0 +1,9 @@
+package com.projects.puzzles.utility;
+
+public enum AssemblyJobStatus {
+    QUEUED, RUNNING, COMPLETED, FAILED;
+
+    public boolean isActive() {
+        return this == QUEUED || this == RUNNING;
+    }
+}
@@ -0,0 +1,5 @@
+package com.projects.puzzles.utility;
+
+public enum AssemblyStrategyType {
+    LEGACY, GREEDY
+}
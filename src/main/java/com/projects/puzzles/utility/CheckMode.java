@@ -0,0 +1,8 @@
+package com.projects.puzzles.utility;
+
+public enum CheckMode {
+    // compares fragment ids with the known solution
+    EXACT,
+    // compares edge pixels, accepts boards where identical looking fragments are swapped
+    VISUAL
+}
@@ -0,0 +1,97 @@
+package com.projects.puzzles.utility;
+
+import java.util.Arrays;
+
+/**
+ * Dense table of edge dissimilarities. The value at {@code (side, i, j)} is the mean difference
+ * between side {@code side} of fragment {@code i} and the opposite side of fragment {@code j}, so
+ * {@code (RIGHT, i, j)} equals {@code (LEFT, j, i)}. Only the RIGHT and BOTTOM planes are stored,
+ * LEFT and TOP are read from them transposed.
+ */
+public class DissimilarityMatrix {
+    private final int size;
+    private final float[][] right;
+    private final float[][] bottom;
+
+    public DissimilarityMatrix(int size) {
+        this.size = size;
+        this.right = newPlane(size);
+        this.bottom = newPlane(size);
+    }
+
+    private static float[][] newPlane(int size) {
+        float[][] plane = new float[size][size];
+        for (float[] row : plane) {
+            Arrays.fill(row, Float.POSITIVE_INFINITY);
+        }
+        return plane;
+    }
+
+    // heap taken by the matrix of a puzzle with this many fragments
+    public static long getBytes(int size) {
+        return 2L * size * size * Float.BYTES;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public float get(Adjacent side, int fragment1, int fragment2) {
+        return switch (side) {
+            case RIGHT -> right[fragment1][fragment2];
+            case LEFT -> right[fragment2][fragment1];
+            case BOTTOM -> bottom[fragment1][fragment2];
+            case TOP -> bottom[fragment2][fragment1];
+        };
+    }
+
+    public void set(Adjacent side, int fragment1, int fragment2, float value) {
+        switch (side) {
+            case RIGHT -> right[fragment1][fragment2] = value;
+            case LEFT -> right[fragment2][fragment1] = value;
+            case BOTTOM -> bottom[fragment1][fragment2] = value;
+            case TOP -> bottom[fragment2][fragment1] = value;
+        }
+    }
+
+    public int[] bestMatches(Adjacent side) {
+        return switch (side) {
+            case RIGHT -> bestInRows(right);
+            case LEFT -> bestInColumns(right);
+            case BOTTOM -> bestInRows(bottom);
+            case TOP -> bestInColumns(bottom);
+        };
+    }
+
+    private int[] bestInRows(float[][] plane) {
+        int[] bestMatches = new int[size];
+        for (int i = 0; i < size; i++) {
+            float[] row = plane[i];
+            int best = -1;
+            for (int j = 0; j < size; j++) {
+                if (j != i && (best == -1 || row[j] < row[best])) {
+                    best = j;
+                }
+            }
+            bestMatches[i] = best;
+        }
+        return bestMatches;
+    }
+
+    // Same result as bestInRows on the transposed plane, walking it row by row
+    private int[] bestInColumns(float[][] plane) {
+        int[] bestMatches = new int[size];
+        float[] bestValues = new float[size];
+        Arrays.fill(bestMatches, -1);
+        for (int j = 0; j < size; j++) {
+            float[] row = plane[j];
+            for (int i = 0; i < size; i++) {
+                if (j != i && (bestMatches[i] == -1 || row[i] < bestValues[i])) {
+                    bestMatches[i] = j;
+                    bestValues[i] = row[i];
+                }
+            }
+        }
+        return bestMatches;
+    }
+}
@@ -0,0 +1,8 @@
+package com.projects.puzzles.utility;
+
+public record EdgeStatus(
+        int column,
+        int row,
+        Adjacent side,
+        boolean correct) {
+}
@@ -0,0 +1,96 @@
+package com.projects.puzzles.utility;
+
+import lombok.Getter;
+
+/**
+ * Borders of all fragments of one session packed into contiguous, channel-separated planes.
+ * Every fragment occupies one block laid out as left, right, top, bottom, so that an edge is
+ * addressed by a single offset into {@link #getRed()}, {@link #getGreen()} and {@link #getBlue()}.
+ * <p>
+ * Every edge also gets a short signature, the mean colour of {@link #SIGNATURE_SEGMENTS} equal
+ * segments stored as interleaved red, green and blue bytes, to find likely neighbours cheaply.
+ */
+@Getter
+public class EdgeStore {
+    public static final int SIGNATURE_SEGMENTS = 8;
+    public static final int SIGNATURE_LENGTH = 3 * SIGNATURE_SEGMENTS;
+
+    private final int fragmentCount;
+    private final int edgeWidth;
+    private final int edgeHeight;
+    private final int blockSize;
+    private final byte[] red;
+    private final byte[] green;
+    private final byte[] blue;
+    private final byte[] signatures;
+
+    public EdgeStore(int fragmentCount, int edgeWidth, int edgeHeight) {
+        this.fragmentCount = fragmentCount;
+        this.edgeWidth = edgeWidth;
+        this.edgeHeight = edgeHeight;
+        this.blockSize = 2 * edgeHeight + 2 * edgeWidth;
+        int size = fragmentCount * blockSize;
+        this.red = new byte[size];
+        this.green = new byte[size];
+        this.blue = new byte[size];
+        this.signatures = new byte[fragmentCount * Adjacent.values().length * SIGNATURE_LENGTH];
+    }
+
+    public void put(int fragmentId, FragmentEdges edges) {
+        putEdge(offset(fragmentId, Adjacent.LEFT), edges.left());
+        putEdge(offset(fragmentId, Adjacent.RIGHT), edges.right());
+        putEdge(offset(fragmentId, Adjacent.TOP), edges.top());
+        putEdge(offset(fragmentId, Adjacent.BOTTOM), edges.bottom());
+        putSignature(signatureOffset(fragmentId, Adjacent.LEFT), edges.left());
+        putSignature(signatureOffset(fragmentId, Adjacent.RIGHT), edges.right());
+        putSignature(signatureOffset(fragmentId, Adjacent.TOP), edges.top());
+        putSignature(signatureOffset(fragmentId, Adjacent.BOTTOM), edges.bottom());
+    }
+
+    public int offset(int fragmentId, Adjacent side) {
+        int base = fragmentId * blockSize;
+        return switch (side) {
+            case LEFT -> base;
+            case RIGHT -> base + edgeHeight;
+            case TOP -> base + 2 * edgeHeight;
+            case BOTTOM -> base + 2 * edgeHeight + edgeWidth;
+        };
+    }
+
+    public int signatureOffset(int fragmentId, Adjacent side) {
+        return (fragmentId * Adjacent.values().length + side.ordinal()) * SIGNATURE_LENGTH;
+    }
+
+    public int length(Adjacent side) {
+        return side == Adjacent.LEFT || side == Adjacent.RIGHT ? edgeHeight : edgeWidth;
+    }
+
+    private void putEdge(int offset, int[] edge) {
+        for (int i = 0; i < edge.length; i++) {
+            int pixel = edge[i];
+            red[offset + i] = (byte) (pixel >> 16);
+            green[offset + i] = (byte) (pixel >> 8);
+            blue[offset + i] = (byte) pixel;
+        }
+    }
+
+    private void putSignature(int offset, int[] edge) {
+        for (int segment = 0; segment < SIGNATURE_SEGMENTS; segment++) {
+            int from = segment * edge.length / SIGNATURE_SEGMENTS;
+            int to = Math.max(from + 1, (segment + 1) * edge.length / SIGNATURE_SEGMENTS);
+            int sumRed = 0;
+            int sumGreen = 0;
+            int sumBlue = 0;
+            for (int i = from; i < to; i++) {
+                int pixel = edge[i];
+                sumRed += (pixel >> 16) & 0xFF;
+                sumGreen += (pixel >> 8) & 0xFF;
+                sumBlue += pixel & 0xFF;
+            }
+            int count = to - from;
+            signatures[offset + 3 * segment] = (byte) (sumRed / count);
+            signatures[offset + 3 * segment + 1] = (byte) (sumGreen / count);
+            signatures[offset + 3 * segment + 2] = (byte) (sumBlue / count);
+        }
+    }
+}
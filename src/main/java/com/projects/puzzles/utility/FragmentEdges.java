@@ -0,0 +1,43 @@
+package com.projects.puzzles.utility;
+
+import java.awt.image.BufferedImage;
+import java.util.stream.IntStream;
+
+public record FragmentEdges(
+        int[] left,
+        int[] right,
+        int[] top,
+        int[] bottom
+) {
+    public static FragmentEdges of(BufferedImage image) {
+        return new FragmentEdges(getLeftEdge(image), getRightEdge(image), getTopEdge(image), getBottomEdge(image));
+    }
+
+    private static int[] getRightEdge(BufferedImage image) {
+        int height = image.getHeight();
+        return IntStream.range(0, height)
+                .map(y -> image.getRGB(image.getWidth() - 1, y))
+                .toArray();
+    }
+
+    private static int[] getLeftEdge(BufferedImage image) {
+        int height = image.getHeight();
+        return IntStream.range(0, height)
+                .map(y -> image.getRGB(0, y))
+                .toArray();
+    }
+
+    private static int[] getTopEdge(BufferedImage image) {
+        int width = image.getWidth();
+        return IntStream.range(0, width)
+                .map(x -> image.getRGB(x, 0))
+                .toArray();
+    }
+
+    private static int[] getBottomEdge(BufferedImage image) {
+        int width = image.getWidth();
+        return IntStream.range(0, width)
+                .map(x -> image.getRGB(x, image.getHeight() - 1))
+                .toArray();
+    }
+}
@@ -0,0 +1,28 @@
+package com.projects.puzzles.utility;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
+
+import javax.imageio.ImageIO;
+
+@Getter
+@RequiredArgsConstructor
+public enum FragmentFormat {
+    JPEG("jpg", MediaType.IMAGE_JPEG, false, false),
+    PNG("png", MediaType.IMAGE_PNG, true, true),
+    // only available with an ImageIO WebP plugin on the classpath
+    WEBP("webp", new MediaType("image", "webp"), true, true),
+    // uncompressed, the cheapest to write and to decode again
+    BMP("bmp", new MediaType("image", "bmp"), true, false);
+
+    private final String extension;
+    private final MediaType mediaType;
+    private final boolean lossless;
+    // writers of formats without an alpha channel reject images that have one
+    private final boolean alpha;
+
+    public boolean isAvailable() {
+        return ImageIO.getImageWritersBySuffix(extension).hasNext();
+    }
+}
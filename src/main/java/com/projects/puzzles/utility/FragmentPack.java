@@ -0,0 +1,78 @@
+package com.projects.puzzles.utility;
+
+import lombok.SneakyThrows;
+
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Encoded fragments of one content in a single memory mapped file, addressed by grid position.
+ * The file holds the fragment bytes in the order they were written, followed by an index of
+ * offset (long) and length (int) per position and a trailer of the position count (int), the
+ * index offset (long) and {@link #MAGIC} (int).
+ * <p>
+ * The mapping stays valid after the file is deleted, it is released together with the pack.
+ */
+public class FragmentPack {
+    static final int MAGIC = 0x50504b31;
+    static final int INDEX_ENTRY_SIZE = Long.BYTES + Integer.BYTES;
+    static final int TRAILER_SIZE = Integer.BYTES + Long.BYTES + Integer.BYTES;
+
+    private final MappedByteBuffer buffer;
+    private final long[] offsets;
+    private final int[] lengths;
+
+    private FragmentPack(MappedByteBuffer buffer, long[] offsets, int[] lengths) {
+        this.buffer = buffer;
+        this.offsets = offsets;
+        this.lengths = lengths;
+    }
+
+    @SneakyThrows
+    public static FragmentPack open(Path file) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < TRAILER_SIZE || size > Integer.MAX_VALUE) {
+                throw new RuntimeException("Not a fragment pack: " + file);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            int trailer = (int) size - TRAILER_SIZE;
+            int count = buffer.getInt(trailer);
+            long indexOffset = buffer.getLong(trailer + Integer.BYTES);
+            if (buffer.getInt(trailer + Integer.BYTES + Long.BYTES) != MAGIC
+                    || count < 0 || indexOffset + (long) count * INDEX_ENTRY_SIZE != trailer) {
+                throw new RuntimeException("Not a fragment pack: " + file);
+            }
+            long[] offsets = new long[count];
+            int[] lengths = new int[count];
+            for (int position = 0; position < count; position++) {
+                int entry = (int) indexOffset + position * INDEX_ENTRY_SIZE;
+                offsets[position] = buffer.getLong(entry);
+                lengths[position] = buffer.getInt(entry + Long.BYTES);
+            }
+            return new FragmentPack(buffer, offsets, lengths);
+        }
+    }
+
+    public int getFragmentCount() {
+        return offsets.length;
+    }
+
+    public int getLength(int position) {
+        return lengths[position];
+    }
+
+    // read only view of the mapped fragment, valid as long as the pack
+    public ByteBuffer slice(int position) {
+        return buffer.slice((int) offsets[position], lengths[position]).asReadOnlyBuffer();
+    }
+
+    public byte[] read(int position) {
+        byte[] bytes = new byte[lengths[position]];
+        buffer.get((int) offsets[position], bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,63 @@
+package com.projects.puzzles.utility;
+
+import lombok.SneakyThrows;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Appends encoded fragments to a new {@link FragmentPack}. Fragments may be written by several
+ * threads in any order, each one reserves its range of the file before writing it.
+ */
+public class FragmentPackWriter implements Closeable {
+    private final FileChannel channel;
+    private final AtomicLong end = new AtomicLong();
+    private final long[] offsets;
+    private final int[] lengths;
+
+    @SneakyThrows
+    public FragmentPackWriter(Path file, int fragmentCount) {
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        this.offsets = new long[fragmentCount];
+        this.lengths = new int[fragmentCount];
+    }
+
+    @SneakyThrows
+    public void write(int position, byte[] bytes) {
+        long offset = end.getAndAdd(bytes.length);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            offset += channel.write(buffer, offset);
+        }
+        offsets[position] = offset - bytes.length;
+        lengths[position] = bytes.length;
+    }
+
+    // Writes the index, must be called once every fragment was written
+    @SneakyThrows
+    public void finish() {
+        int count = offsets.length;
+        long indexOffset = end.get();
+        ByteBuffer footer = ByteBuffer.allocate(count * FragmentPack.INDEX_ENTRY_SIZE + FragmentPack.TRAILER_SIZE);
+        for (int position = 0; position < count; position++) {
+            if (lengths[position] == 0) {
+                throw new IllegalStateException("Fragment " + position + " was not written");
+            }
+            footer.putLong(offsets[position]).putInt(lengths[position]);
+        }
+        footer.putInt(count).putLong(indexOffset).putInt(FragmentPack.MAGIC).flip();
+        while (footer.hasRemaining()) {
+            indexOffset += channel.write(footer, indexOffset);
+        }
+    }
+
+    @Override
+    @SneakyThrows
+    public void close() {
+        channel.close();
+    }
+}
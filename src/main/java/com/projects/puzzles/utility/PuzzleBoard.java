@@ -0,0 +1,166 @@
+package com.projects.puzzles.utility;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Occupancy grid of a session's board together with the solution it is compared against.
+ * Only the right and bottom edge of every cell are tracked; an edge is correct when the two
+ * fragments next to it are neighbours in the solution on that side, so a move only has to
+ * re-evaluate the edges around the two cells it touches.
+ */
+public class PuzzleBoard {
+    private final int columns;
+    private final int rows;
+    private final int[] solution;
+    private final int[] solutionPositions;
+    private final int[] cells;
+    private final int[] positions;
+    private final boolean[] rightEdges;
+    private final boolean[] bottomEdges;
+    private int correctEdges;
+
+    public PuzzleBoard(int columns, int rows, int[] solution) {
+        this.columns = columns;
+        this.rows = rows;
+        this.solution = solution;
+        this.solutionPositions = new int[solution.length];
+        this.cells = new int[solution.length];
+        this.positions = new int[solution.length];
+        this.rightEdges = new boolean[solution.length];
+        this.bottomEdges = new boolean[solution.length];
+        for (int position = 0; position < solution.length; position++) {
+            solutionPositions[solution[position]] = position;
+        }
+        // fragments are first shown at the slot matching their id
+        int[] placement = new int[solution.length];
+        for (int i = 0; i < placement.length; i++) {
+            placement[i] = i;
+        }
+        setPlacement(placement);
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int[] getSolution() {
+        return solution;
+    }
+
+    // grid position of the fragment in the solved picture
+    public int getSolutionPosition(int fragmentId) {
+        return solutionPositions[fragmentId];
+    }
+
+    public synchronized int[] getPlacement() {
+        return cells.clone();
+    }
+
+    public synchronized int getCorrectEdges() {
+        return correctEdges;
+    }
+
+    public int getTotalEdges() {
+        return rows * (columns - 1) + (rows - 1) * columns;
+    }
+
+    public synchronized boolean isSolved() {
+        // with every edge correct the board is the solution, a full grid leaves no room to shift it
+        return correctEdges == getTotalEdges();
+    }
+
+    public synchronized int getPosition(int fragmentId) {
+        return positions[fragmentId];
+    }
+
+    public synchronized int getFragment(int position) {
+        return cells[position];
+    }
+
+    public synchronized void setPlacement(int[] placement) {
+        System.arraycopy(placement, 0, cells, 0, cells.length);
+        for (int position = 0; position < cells.length; position++) {
+            positions[cells[position]] = position;
+        }
+        correctEdges = 0;
+        for (int position = 0; position < cells.length; position++) {
+            rightEdges[position] = isRightEdgeCorrect(position);
+            bottomEdges[position] = isBottomEdgeCorrect(position);
+            correctEdges += (rightEdges[position] ? 1 : 0) + (bottomEdges[position] ? 1 : 0);
+        }
+    }
+
+    /**
+     * Moves the fragment to the given cell, swapping it with the fragment there,
+     * and returns the edges whose status changed.
+     */
+    public synchronized List<EdgeStatus> move(int fragmentId, int column, int row) {
+        int from = positions[fragmentId];
+        int to = row * columns + column;
+        List<EdgeStatus> changedEdges = new ArrayList<>();
+        if (from == to) {
+            return changedEdges;
+        }
+        int otherFragmentId = cells[to];
+        cells[to] = fragmentId;
+        cells[from] = otherFragmentId;
+        positions[fragmentId] = to;
+        positions[otherFragmentId] = from;
+
+        updateEdgesAround(from, changedEdges);
+        updateEdgesAround(to, changedEdges);
+        return changedEdges;
+    }
+
+    private void updateEdgesAround(int position, List<EdgeStatus> changedEdges) {
+        int column = position % columns;
+        int row = position / columns;
+        updateRightEdge(position, changedEdges);
+        updateBottomEdge(position, changedEdges);
+        if (column > 0) {
+            updateRightEdge(position - 1, changedEdges);
+        }
+        if (row > 0) {
+            updateBottomEdge(position - columns, changedEdges);
+        }
+    }
+
+    private void updateRightEdge(int position, List<EdgeStatus> changedEdges) {
+        boolean correct = isRightEdgeCorrect(position);
+        if (correct != rightEdges[position]) {
+            rightEdges[position] = correct;
+            correctEdges += correct ? 1 : -1;
+            changedEdges.add(new EdgeStatus(position % columns, position / columns, Adjacent.RIGHT, correct));
+        }
+    }
+
+    private void updateBottomEdge(int position, List<EdgeStatus> changedEdges) {
+        boolean correct = isBottomEdgeCorrect(position);
+        if (correct != bottomEdges[position]) {
+            bottomEdges[position] = correct;
+            correctEdges += correct ? 1 : -1;
+            changedEdges.add(new EdgeStatus(position % columns, position / columns, Adjacent.BOTTOM, correct));
+        }
+    }
+
+    private boolean isRightEdgeCorrect(int position) {
+        if (position % columns == columns - 1) {
+            return false;
+        }
+        int solutionPosition = solutionPositions[cells[position]];
+        return solutionPosition % columns != columns - 1
+                && solutionPositions[cells[position + 1]] == solutionPosition + 1;
+    }
+
+    private boolean isBottomEdgeCorrect(int position) {
+        if (position / columns == rows - 1) {
+            return false;
+        }
+        return solutionPositions[cells[position + columns]] == solutionPositions[cells[position]] + columns;
+    }
+}
@@ -1,12 +1,37 @@
 package com.projects.puzzles.utility;
 
+import lombok.Builder;
 import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
 
+import java.time.Duration;
+
+@Builder
 @ConfigurationProperties(prefix = "puzzle")
 public record PuzzleConfig(
         int numPuzzlesX,
         int numPuzzlesY,
         int colorThreshold,
         double meanErrorProbabilityThreshold,
-        String pathToPuzzleImagesDirectory) {
+        String pathToPuzzleImagesDirectory,
+        AssemblyStrategyType assemblyStrategy,
+        int scoringParallelism,
+        int assemblyMaxConcurrency,
+        int assemblyQueueCapacity,
+        DataSize splitMemoryBudget,
+        int maxImageSide,
+        int writeParallelism,
+        DataSize fragmentCacheSize,
+        boolean atlasEnabled,
+        PuzzleSessionStoreType sessionStore,
+        Duration sessionTimeout,
+        int diagnosticsQueueCapacity,
+        FragmentFormat fragmentFormat,
+        float jpegQuality,
+        int maxGridSide,
+        int candidatesPerSide,
+        double candidateTolerance,
+        int warmUpIterations,
+        boolean exitAfterWarmUp,
+        DataSize assemblyMemoryBudget) {
 }
@@ -0,0 +1,6 @@
+package com.projects.puzzles.utility;
+
+public enum PuzzleSessionStoreType {
+    MEMORY,
+    FILE
+}
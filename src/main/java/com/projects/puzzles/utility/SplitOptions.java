@@ -0,0 +1,12 @@
+package com.projects.puzzles.utility;
+
+public record SplitOptions(
+        int columns,
+        int rows,
+        FragmentFormat format,
+        float quality) {
+
+    public int getFragmentCount() {
+        return columns * rows;
+    }
+}
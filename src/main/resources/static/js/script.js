@@ -1,18 +1,26 @@
 // Create a puzzle element dynamically
 let puzzleWidth = 0;
 let puzzleHeight = 0;
+// Atlas manifest of the current board, null when fragments are loaded one by one
+let atlas = null;
 
 
 function createPuzzleElement(puzzle) {
     const puzzleContainer = document.getElementById('puzzle-container');
-    const puzzleElement = document.createElement('img');
+    const puzzleElement = document.createElement(atlas ? 'div' : 'img');
     puzzleElement.className = 'puzzle-piece';
     puzzleElement.id = puzzle.id;
     puzzleElement.style.width = puzzle.width + 'px';
     puzzleElement.style.height = puzzle.height + 'px';
     puzzleElement.style.left = puzzle.x + 'px';
     puzzleElement.style.top = puzzle.y + 'px';
-    puzzleElement.src = '/api/puzzles/' + puzzle.id + '/image';
+    setPuzzleCell(puzzleElement, puzzle);
+    if (atlas) {
+        puzzleElement.style.backgroundImage = 'url(' + atlas.imageUrl + ')';
+        updateAtlasBackground(puzzleElement);
+    } else {
+        puzzleElement.src = '/api/puzzles/' + puzzle.id + '/image';
+    }
 
     puzzleWidth += puzzle.width;
     puzzleHeight += puzzle.height;
@@ -20,6 +28,63 @@ function createPuzzleElement(puzzle) {
     puzzleContainer.appendChild(puzzleElement);
 }
 
+// Show the fragment's region of the atlas, scaled to the current piece size
+function updateAtlasBackground(puzzleElement) {
+    if (!atlas) {
+        return;
+    }
+    const fragment = atlas.fragments[puzzleElement.id];
+    const scaleX = parseFloat(puzzleElement.style.width) / atlas.fragmentWidth;
+    const scaleY = parseFloat(puzzleElement.style.height) / atlas.fragmentHeight;
+    puzzleElement.style.backgroundSize = atlas.width * scaleX + 'px ' + atlas.height * scaleY + 'px';
+    puzzleElement.style.backgroundPosition = -fragment.x * scaleX + 'px ' + -fragment.y * scaleY + 'px';
+}
+
+// Remember the board cell of a piece, the server coordinates are unscaled
+function setPuzzleCell(puzzleElement, puzzle) {
+    puzzleElement.dataset.column = Math.round(puzzle.x / puzzle.width);
+    puzzleElement.dataset.row = Math.round(puzzle.y / puzzle.height);
+}
+
+// Send a single move to the server, which answers with the edges it changed.
+// A move that raced another one is rejected with 409 and sent again on top of the other
+function postMove(puzzleElement, attempts = 3) {
+    fetch('/api/puzzles/moves', {
+        method: 'POST',
+        headers: {
+            'Content-Type': 'application/json',
+        },
+        body: JSON.stringify({
+            id: puzzleElement.id,
+            column: puzzleElement.dataset.column,
+            row: puzzleElement.dataset.row,
+        }),
+    })
+        .then(response => {
+            if (response.status === 409 && attempts > 1) {
+                postMove(puzzleElement, attempts - 1);
+                return null;
+            }
+            return response.ok ? response.json() : Promise.reject('Error moving puzzle');
+        })
+        .then(result => {
+            if (result === null) {
+                return;
+            }
+            console.log('Correct edges: ' + result.correctEdges + '/' + result.totalEdges);
+            if (result.solved) {
+                alert('Puzzle is correct!');
+            }
+        })
+        .catch(error => console.error('Error:', error));
+}
+
+function loadAtlasManifest() {
+    return fetch('/api/puzzles/atlas/manifest')
+        .then(response => response.ok ? response.json() : null)
+        .catch(() => null);
+}
+
 function makePuzzlePiecesDraggable() {
     let startLeft = 0;
     let startTop = 0;
@@ -62,6 +127,12 @@ function makePuzzlePiecesDraggable() {
                 if (doRectsOverlap(draggableRect, targetRect)) {
                     // Store the overlapping target and its initial position
                     overlappingTarget = target;
+                    const targetCell = {column: target[0].dataset.column, row: target[0].dataset.row};
+                    target[0].dataset.column = draggable[0].dataset.column;
+                    target[0].dataset.row = draggable[0].dataset.row;
+                    draggable[0].dataset.column = targetCell.column;
+                    draggable[0].dataset.row = targetCell.row;
+                    postMove(draggable[0]);
                     overlappingTarget.addClass('overlapping');
                     overlappingTarget.css('z-index', '9999');
                     overlappingTarget.animate({
@@ -138,6 +209,7 @@ function changePuzzleContainerSize() {
         puzzlePiece.style.height = newHeight + 'px';
         puzzlePiece.style.left = adjustedLeft + 'px';
         puzzlePiece.style.top = adjustedTop + 'px';
+        updateAtlasBackground(puzzlePiece);
     }
 
     puzzleContainer.style.width = containerWidth * scaleFactor + 'px';
@@ -150,6 +222,9 @@ function loadImage(event) {
     const file = event.target.files[0];
     const formData = new FormData();
     formData.append('image', file);
+    formData.append('columns', document.getElementById('grid-columns').value);
+    formData.append('rows', document.getElementById('grid-rows').value);
+    formData.append('format', document.getElementById('fragment-format').value);
 
     const puzzleContainer = document.getElementById('puzzle-container');
     if (puzzleContainer.children.length > 0) {
@@ -164,16 +239,22 @@ function loadImage(event) {
         data: formData,
         processData: false,
         contentType: false,
+        error: function (xhr) {
+            alert('Upload failed: ' + (xhr.responseJSON ? xhr.responseJSON.message || xhr.responseJSON.error : xhr.status));
+        },
         success: function (puzzles) {
             $.ajax({
                 url: '/api/puzzles',
                 type: 'GET',
                 success: function (puzzles) {
-                    puzzles.forEach(puzzle => {
-                        createPuzzleElement(puzzle);
+                    loadAtlasManifest().then(manifest => {
+                        atlas = manifest;
+                        puzzles.forEach(puzzle => {
+                            createPuzzleElement(puzzle);
+                        });
+                        changePuzzleContainerSize();
+                        makePuzzlePiecesDraggable();
                     });
-                    changePuzzleContainerSize();
-                    makePuzzlePiecesDraggable();
                 }
             });
         }
@@ -219,6 +300,7 @@ function updatePuzzleElement(puzzle) {
     puzzleElement.style.top = puzzle.y + 'px';
     puzzleElement.style.width = puzzle.width + 'px';
     puzzleElement.style.height = puzzle.height + 'px';
+    setPuzzleCell(puzzleElement, puzzle);
 }
 
 function updatePuzzlesMap(result) {
@@ -228,6 +310,67 @@ function updatePuzzlesMap(result) {
     changePuzzleContainerSize();
 }
 
+// Poll the assembly job until it is finished
+function waitForAssemblyJob(jobId) {
+    return fetch('/api/puzzles/assemble/' + jobId)
+        .then(response => response.ok ? response.json() : Promise.reject('Error assembling puzzle'))
+        .then(job => {
+            if (job.status === 'QUEUED' || job.status === 'RUNNING') {
+                return new Promise(resolve => setTimeout(resolve, 500))
+                    .then(() => waitForAssemblyJob(jobId));
+            }
+            return job.status === 'COMPLETED' ? job.puzzles : Promise.reject(job.error);
+        });
+}
+
+// Move pieces the solver already fixed to their cells, scaled like the rest of the board
+function animatePlacement(puzzles) {
+    puzzles.forEach(puzzle => {
+        const puzzleElement = document.getElementById(puzzle.id);
+        const scale = parseFloat(puzzleElement.style.width) / puzzle.width;
+        setPuzzleCell(puzzleElement, puzzle);
+        $(puzzleElement).animate({
+            left: puzzle.x * scale,
+            top: puzzle.y * scale
+        }, 400);
+    });
+}
+
+// Follow the assembly job through its event stream, polling where the stream is not available
+function followAssemblyJob(jobId) {
+    if (!window.EventSource) {
+        return waitForAssemblyJob(jobId);
+    }
+    const progress = document.getElementById('assembly-progress');
+    return new Promise((resolve, reject) => {
+        const events = new EventSource('/api/puzzles/assemble/' + jobId + '/events');
+        const finish = () => {
+            events.close();
+            progress.hidden = true;
+            $('.puzzle-piece').stop(true, true);
+        };
+        events.addEventListener('scoring', event => {
+            progress.hidden = false;
+            progress.value = JSON.parse(event.data);
+        });
+        events.addEventListener('placement', event => animatePlacement(JSON.parse(event.data)));
+        events.addEventListener('completed', event => {
+            finish();
+            resolve(JSON.parse(event.data).puzzles);
+        });
+        events.addEventListener('failed', event => {
+            finish();
+            reject(JSON.parse(event.data).error);
+        });
+        events.onerror = () => {
+            if (events.readyState === EventSource.CLOSED) {
+                finish();
+                waitForAssemblyJob(jobId).then(resolve, reject);
+            }
+        };
+    });
+}
+
 // Assemble the puzzle
 function assemblePuzzle() {
     fetch('/api/puzzles/assemble', {
@@ -235,6 +378,7 @@ function assemblePuzzle() {
         }
     )
         .then(response => response.ok ? response.json() : Promise.reject('Error assembling puzzle'))
+        .then(job => followAssemblyJob(job.jobId))
         .then(result => {
             alert('Puzzle successfully assembled!');
             updatePuzzlesMap(result);
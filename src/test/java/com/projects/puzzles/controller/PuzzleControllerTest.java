@@ -0,0 +1,83 @@
+package com.projects.puzzles.controller;
+
+import com.projects.puzzles.model.FragmentImage;
+import com.projects.puzzles.service.AssemblyJobService;
+import com.projects.puzzles.service.FragmentAtlasService;
+import com.projects.puzzles.service.PuzzleService;
+import com.projects.puzzles.utility.ByteBufferResource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.UUID;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class PuzzleControllerTest {
+    private static final String CONTENT_ID = "0123abcd-1";
+    private static final int POSITION = 3;
+
+    private final PuzzleService puzzleService = mock(PuzzleService.class);
+    private final MockMvc mockMvc = MockMvcBuilders.standaloneSetup(new PuzzleController(puzzleService,
+            mock(AssemblyJobService.class), mock(FragmentAtlasService.class))).build();
+    private final UUID userId = UUID.randomUUID();
+    private final byte[] pack = new byte[256];
+    private byte[] fragment;
+
+    @BeforeEach
+    void mapFragment() {
+        for (int i = 0; i < pack.length; i++) {
+            pack[i] = (byte) i;
+        }
+        // a slice in the middle of the pack, the way uncached fragments are served from the mapping
+        fragment = Arrays.copyOfRange(pack, 100, 150);
+        ByteBufferResource resource = new ByteBufferResource(ByteBuffer.wrap(pack).slice(100, 50), "fragment");
+        when(puzzleService.getPuzzleImage(userId, 7)).thenReturn(new FragmentImage(resource,
+                MediaType.IMAGE_JPEG, fragment.length, CONTENT_ID, POSITION));
+    }
+
+    @Test
+    void imageIsServedWithItsETag() throws Exception {
+        mockMvc.perform(get("/api/puzzles/7/image").sessionAttr("userId", userId))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"0123abcd-1-3\""))
+                .andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, fragment.length))
+                .andExpect(content().contentType(MediaType.IMAGE_JPEG))
+                .andExpect(content().bytes(fragment));
+    }
+
+    @Test
+    void unchangedImageIsNotSentAgain() throws Exception {
+        mockMvc.perform(get("/api/puzzles/7/image").sessionAttr("userId", userId)
+                        .header(HttpHeaders.IF_NONE_MATCH, "\"0123abcd-1-3\""))
+                .andExpect(status().isNotModified())
+                .andExpect(content().bytes(new byte[0]));
+        mockMvc.perform(get("/api/puzzles/7/image").sessionAttr("userId", userId)
+                        .header(HttpHeaders.IF_NONE_MATCH, "\"0123abcd-1-4\""))
+                .andExpect(status().isOk())
+                .andExpect(content().bytes(fragment));
+    }
+
+    @Test
+    void rangesAreReadFromTheSliceOfThePack() throws Exception {
+        mockMvc.perform(get("/api/puzzles/7/image").sessionAttr("userId", userId)
+                        .header(HttpHeaders.RANGE, "bytes=10-19"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 10-19/50"))
+                .andExpect(content().bytes(Arrays.copyOfRange(fragment, 10, 20)));
+        mockMvc.perform(get("/api/puzzles/7/image").sessionAttr("userId", userId)
+                        .header(HttpHeaders.RANGE, "bytes=-5"))
+                .andExpect(status().isPartialContent())
+                .andExpect(content().bytes(Arrays.copyOfRange(fragment, 45, 50)));
+    }
+}
@@ -0,0 +1,172 @@
+package com.projects.puzzles.service;
+
+import com.projects.puzzles.controller.PuzzleController;
+import com.projects.puzzles.dto.AssemblyJobDto;
+import com.projects.puzzles.dto.PuzzleDto;
+import com.projects.puzzles.model.PuzzleSessionExpiredEvent;
+import com.projects.puzzles.utility.AssemblyJobStatus;
+import com.projects.puzzles.utility.TestPuzzleConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+
+class AssemblyJobServiceTest {
+    private final PuzzleService puzzleService = mock(PuzzleService.class);
+    private final AssemblyJobService assemblyJobService = new AssemblyJobService(puzzleService,
+            TestPuzzleConfig.builder().assemblyMaxConcurrency(1).assemblyQueueCapacity(1).build());
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    private static PuzzleDto puzzle(int id) {
+        return new PuzzleDto(id, id * 10, 0, 10, 10);
+    }
+
+    @AfterEach
+    void shutDown() {
+        release.countDown();
+        assemblyJobService.destroy();
+    }
+
+    // assemblies block until released, so that jobs stay active as long as a test needs them to
+    private void blockAssemblies() {
+        when(puzzleService.assemblePuzzles(any(), anyBoolean(), any())).thenAnswer(invocation -> {
+            assertTrue(release.await(10, TimeUnit.SECONDS));
+            return List.of(puzzle(0));
+        });
+    }
+
+    private AssemblyJobDto awaitResult(UUID userId, UUID jobId) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        AssemblyJobDto job = assemblyJobService.getJob(userId, jobId);
+        while (job.status().isActive() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+            job = assemblyJobService.getJob(userId, jobId);
+        }
+        return job;
+    }
+
+    private static HttpStatusCode statusOf(Executable executable) {
+        return assertThrows(ResponseStatusException.class, executable).getStatusCode();
+    }
+
+    @Test
+    void repeatedSubmitsOfASessionJoinItsActiveJob() throws Exception {
+        blockAssemblies();
+        UUID userId = UUID.randomUUID();
+
+        AssemblyJobDto first = assemblyJobService.submit(userId, false);
+        assertEquals(first.jobId(), assemblyJobService.submit(userId, false).jobId());
+        assertEquals(first.jobId(), assemblyJobService.submit(userId, true).jobId());
+        release.countDown();
+        assertEquals(AssemblyJobStatus.COMPLETED, awaitResult(userId, first.jobId()).status());
+
+        AssemblyJobDto second = assemblyJobService.submit(userId, false);
+        assertNotEquals(first.jobId(), second.jobId());
+        assertEquals(AssemblyJobStatus.COMPLETED, awaitResult(userId, second.jobId()).status());
+        // the result of the previous job stays readable for clients still polling it
+        assertEquals(List.of(puzzle(0)), assemblyJobService.getJob(userId, first.jobId()).puzzles());
+        verify(puzzleService, times(2)).assemblePuzzles(eq(userId), anyBoolean(), any());
+    }
+
+    @Test
+    void submitsBeyondTheQueueCapacityAreRejected() throws Exception {
+        blockAssemblies();
+        UUID running = UUID.randomUUID();
+        UUID queued = UUID.randomUUID();
+        UUID rejected = UUID.randomUUID();
+
+        AssemblyJobDto runningJob = assemblyJobService.submit(running, false);
+        AssemblyJobDto queuedJob = assemblyJobService.submit(queued, false);
+        assertEquals(AssemblyJobStatus.QUEUED, queuedJob.status());
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, statusOf(() -> assemblyJobService.submit(rejected, false)));
+
+        release.countDown();
+        assertEquals(AssemblyJobStatus.COMPLETED, awaitResult(running, runningJob.jobId()).status());
+        assertEquals(AssemblyJobStatus.COMPLETED, awaitResult(queued, queuedJob.jobId()).status());
+        // the rejected session is not stuck with a job that never runs
+        AssemblyJobDto retried = assemblyJobService.submit(rejected, false);
+        assertEquals(AssemblyJobStatus.COMPLETED, awaitResult(rejected, retried.jobId()).status());
+    }
+
+    @Test
+    void jobsAreOnlyFoundByTheirSessionUntilItExpires() throws Exception {
+        when(puzzleService.assemblePuzzles(any(), anyBoolean(), any())).thenReturn(List.of(puzzle(0)));
+        UUID userId = UUID.randomUUID();
+        AssemblyJobDto job = assemblyJobService.submit(userId, false);
+        assertEquals(AssemblyJobStatus.COMPLETED, awaitResult(userId, job.jobId()).status());
+
+        assertEquals(HttpStatus.NOT_FOUND, statusOf(() -> assemblyJobService.getJob(UUID.randomUUID(), job.jobId())));
+        assertEquals(HttpStatus.NOT_FOUND, statusOf(() -> assemblyJobService.getJob(userId, UUID.randomUUID())));
+
+        assemblyJobService.onSessionExpired(new PuzzleSessionExpiredEvent(userId));
+        assertEquals(HttpStatus.NOT_FOUND, statusOf(() -> assemblyJobService.getJob(userId, job.jobId())));
+    }
+
+    @Test
+    void failedAssembliesEndTheJobWithTheirError() throws Exception {
+        when(puzzleService.assemblePuzzles(any(), anyBoolean(), any()))
+                .thenThrow(new IllegalStateException("no edges"));
+        UUID userId = UUID.randomUUID();
+
+        AssemblyJobDto job = awaitResult(userId, assemblyJobService.submit(userId, false).jobId());
+        assertEquals(AssemblyJobStatus.FAILED, job.status());
+        assertEquals("no edges", job.error());
+    }
+
+    @Test
+    void everyPlacementIsStreamedBeforeTheResult() throws Exception {
+        UUID userId = UUID.randomUUID();
+        int placements = 50;
+        CountDownLatch subscribed = new CountDownLatch(1);
+        // the greedy strategy reports most placements in a burst at the very end of the solve
+        when(puzzleService.assemblePuzzles(eq(userId), anyBoolean(), any())).thenAnswer(invocation -> {
+            AssemblyListener assemblyListener = invocation.getArgument(2);
+            assertTrue(subscribed.await(10, TimeUnit.SECONDS));
+            assemblyListener.onScoringProgress(1);
+            IntStream.range(0, placements).forEach(id -> assemblyListener.onPlaced(List.of(puzzle(id))));
+            return List.of(puzzle(0));
+        });
+        MockMvc mockMvc = MockMvcBuilders.standaloneSetup(new PuzzleController(puzzleService, assemblyJobService,
+                mock(FragmentAtlasService.class))).build();
+
+        AssemblyJobDto job = assemblyJobService.submit(userId, false);
+        MvcResult result = mockMvc.perform(get("/api/puzzles/assemble/{jobId}/events", job.jobId())
+                        .sessionAttr("userId", userId))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        subscribed.countDown();
+        result.getAsyncResult(10_000);
+
+        List<String> events = result.getResponse().getContentAsString().lines()
+                .filter(line -> line.startsWith("event:"))
+                .toList();
+        assertEquals("event:scoring", events.get(0));
+        assertEquals(placements, events.stream().filter("event:placement"::equals).count());
+        assertEquals(List.of("event:completed"), events.subList(placements + 1, events.size()));
+    }
+}
@@ -0,0 +1,117 @@
+package com.projects.puzzles.service;
+
+import com.projects.puzzles.utility.Adjacent;
+import com.projects.puzzles.utility.EdgeStore;
+import com.projects.puzzles.utility.FragmentEdges;
+import com.projects.puzzles.utility.TestPuzzleConfig;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EdgeComparatorTest {
+    private static final int COLOR_THRESHOLD = 15;
+
+    private final EdgeComparator edgeComparator = new EdgeComparator(
+            TestPuzzleConfig.builder().colorThreshold(COLOR_THRESHOLD).build());
+
+    private static double referenceMeanDiff(int[] edge1, int[] edge2) {
+        int totalDiff = 0;
+        for (int i = 0; i < edge1.length; i++) {
+            int pixel1 = edge1[i];
+            int pixel2 = edge2[i];
+            boolean colorsMatch = Math.abs(((pixel1 >> 16) & 0xFF) - ((pixel2 >> 16) & 0xFF)) <= COLOR_THRESHOLD &&
+                    Math.abs(((pixel1 >> 8) & 0xFF) - ((pixel2 >> 8) & 0xFF)) <= COLOR_THRESHOLD &&
+                    Math.abs((pixel1 & 0xFF) - (pixel2 & 0xFF)) <= COLOR_THRESHOLD;
+            if (!colorsMatch) {
+                totalDiff++;
+            }
+        }
+        return (double) totalDiff / edge1.length;
+    }
+
+    private static int[] randomEdge(Random random, int length) {
+        int[] edge = new int[length];
+        int pixel = random.nextInt();
+        for (int i = 0; i < length; i++) {
+            // mostly small steps so that both matching and mismatching pixels occur
+            pixel = random.nextInt(4) == 0 ? random.nextInt() : pixel + random.nextInt(0x0F0F0F);
+            edge[i] = 0xFF000000 | pixel;
+        }
+        return edge;
+    }
+
+    @Test
+    void meanDiffMatchesPixelByPixelComparison() {
+        Random random = new Random(42);
+        int width = 37;
+        int height = 53;
+        FragmentEdges[] fragments = new FragmentEdges[6];
+        EdgeStore edgeStore = new EdgeStore(fragments.length, width, height);
+        for (int i = 0; i < fragments.length; i++) {
+            fragments[i] = new FragmentEdges(randomEdge(random, height), randomEdge(random, height),
+                    randomEdge(random, width), randomEdge(random, width));
+            edgeStore.put(i, fragments[i]);
+        }
+
+        for (int i = 0; i < fragments.length; i++) {
+            for (int j = 0; j < fragments.length; j++) {
+                assertEquals(referenceMeanDiff(fragments[i].right(), fragments[j].left()),
+                        edgeComparator.getMeanDiff(edgeStore, i, Adjacent.RIGHT, j));
+                assertEquals(referenceMeanDiff(fragments[i].left(), fragments[j].right()),
+                        edgeComparator.getMeanDiff(edgeStore, i, Adjacent.LEFT, j));
+                assertEquals(referenceMeanDiff(fragments[i].bottom(), fragments[j].top()),
+                        edgeComparator.getMeanDiff(edgeStore, i, Adjacent.BOTTOM, j));
+                assertEquals(referenceMeanDiff(fragments[i].top(), fragments[j].bottom()),
+                        edgeComparator.getMeanDiff(edgeStore, i, Adjacent.TOP, j));
+            }
+        }
+    }
+
+    @Test
+    void earlyExitMatchingAgreesWithMeanDiff() {
+        Random random = new Random(7);
+        int width = 150;
+        int height = 301;
+        EdgeStore edgeStore = new EdgeStore(8, width, height);
+        for (int i = 0; i < 8; i++) {
+            edgeStore.put(i, new FragmentEdges(randomEdge(random, height), randomEdge(random, height),
+                    randomEdge(random, width), randomEdge(random, width)));
+        }
+
+        for (double maxMeanDiff : new double[]{0.0, 0.14, 0.5, 0.75, 1.0}) {
+            for (int i = 0; i < 8; i++) {
+                for (int j = 0; j < 8; j++) {
+                    for (Adjacent side : Adjacent.values()) {
+                        assertEquals(edgeComparator.getMeanDiff(edgeStore, i, side, j) <= maxMeanDiff,
+                                edgeComparator.isMatching(edgeStore, i, side, j, maxMeanDiff));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void matchingAcceptsTheThresholdWhereTheProductRoundsDown() {
+        int length = 100;
+        double maxMeanDiff = 0.29;
+        int[] black = new int[length];
+        Arrays.fill(black, 0xFF000000);
+        EdgeStore edgeStore = new EdgeStore(3, length, length);
+        edgeStore.put(0, new FragmentEdges(black, black, black, black));
+        // 29 and 30 mismatching pixels, 0.29 * 100 is 28.999999999999996 in double arithmetic
+        for (int fragment = 1; fragment <= 2; fragment++) {
+            int[] edge = black.clone();
+            Arrays.fill(edge, 0, 28 + fragment, 0xFFFFFFFF);
+            edgeStore.put(fragment, new FragmentEdges(edge, edge, edge, edge));
+        }
+
+        assertEquals(0.29, edgeComparator.getMeanDiff(edgeStore, 0, Adjacent.RIGHT, 1));
+        assertTrue(edgeComparator.isMatching(edgeStore, 0, Adjacent.RIGHT, 1, maxMeanDiff));
+        assertFalse(edgeComparator.isMatching(edgeStore, 0, Adjacent.RIGHT, 2, maxMeanDiff));
+    }
+}
@@ -0,0 +1,148 @@
+package com.projects.puzzles.service;
+
+import com.projects.puzzles.model.FragmentContent;
+import com.projects.puzzles.model.PuzzleSession;
+import com.projects.puzzles.utility.FragmentFormat;
+import com.projects.puzzles.utility.FragmentPackWriter;
+import com.projects.puzzles.utility.PuzzleBoard;
+import com.projects.puzzles.utility.PuzzleConfig;
+import com.projects.puzzles.utility.PuzzleDimentions;
+import com.projects.puzzles.utility.SplitOptions;
+import com.projects.puzzles.utility.TestPuzzleConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CyclicBarrier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FragmentContentStoreTest {
+    private static final String KEY = "0123abcd";
+    private static final PuzzleDimentions DIMENTIONS = new PuzzleDimentions(8, 8);
+
+    @TempDir
+    Path directory;
+
+    private FragmentContentStore contentStore(Duration sessionTimeout) {
+        PuzzleConfig puzzleConfig = TestPuzzleConfig.builder()
+                .pathToPuzzleImagesDirectory(directory + "/")
+                .sessionTimeout(sessionTimeout)
+                .build();
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        FragmentContentStore contentStore = new FragmentContentStore(puzzleConfig,
+                new FragmentEdgeCache(meterRegistry), new FragmentImageCache(puzzleConfig, meterRegistry),
+                meterRegistry);
+        contentStore.loadContents();
+        return contentStore;
+    }
+
+    private FragmentContent splitContent(FragmentContentStore contentStore) throws Exception {
+        String contentId = contentStore.newContentId(KEY);
+        Path packFile = contentStore.getPackFile(contentId);
+        Files.createDirectories(packFile.getParent());
+        try (FragmentPackWriter packWriter = new FragmentPackWriter(packFile, 1)) {
+            packWriter.write(0, new byte[]{1, 2, 3});
+            packWriter.finish();
+        }
+        return new FragmentContent(contentId, KEY, DIMENTIONS);
+    }
+
+    private static PuzzleSession session(UUID userId, String contentId) {
+        return new PuzzleSession(userId, contentId, DIMENTIONS.puzzleWidth(), DIMENTIONS.puzzleHeight(),
+                FragmentFormat.JPEG, new PuzzleBoard(2, 1, new int[]{1, 0}));
+    }
+
+    @Test
+    void sharedContentIsDeletedWithItsLastOwner() throws Exception {
+        FragmentContentStore contentStore = contentStore(Duration.ofMinutes(30));
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+        FragmentContent content = contentStore.publish(splitContent(contentStore), first);
+        Path packFile = contentStore.getPackFile(content.getId());
+
+        assertSame(content, contentStore.acquire(KEY, second).orElseThrow());
+        contentStore.release(first, content.getId());
+        assertTrue(Files.exists(packFile));
+        // releasing twice must not take the other owner's reference
+        contentStore.release(first, content.getId());
+        assertTrue(Files.exists(packFile));
+
+        contentStore.releaseAll(second);
+        assertFalse(Files.exists(packFile));
+        assertTrue(contentStore.acquire(KEY, first).isEmpty());
+    }
+
+    @Test
+    void concurrentUploadsOfTheSameKeyShareOneContent() throws Exception {
+        FragmentContentStore contentStore = contentStore(Duration.ofMinutes(30));
+        List<FragmentContent> splits = List.of(splitContent(contentStore), splitContent(contentStore));
+        List<UUID> users = List.of(UUID.randomUUID(), UUID.randomUUID());
+        CyclicBarrier barrier = new CyclicBarrier(2);
+
+        List<CompletableFuture<FragmentContent>> published = List.of(0, 1).stream()
+                .map(i -> CompletableFuture.supplyAsync(() -> {
+                    try {
+                        barrier.await();
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                    return contentStore.publish(splits.get(i), users.get(i));
+                }))
+                .toList();
+        FragmentContent winner = published.get(0).get();
+
+        assertSame(winner, published.get(1).get());
+        assertEquals(Set.copyOf(users), winner.getOwners());
+        for (FragmentContent split : splits) {
+            assertEquals(split == winner, Files.exists(contentStore.getPackFile(split.getId())));
+        }
+    }
+
+    @Test
+    void restoredSessionsAdoptTheirContentAndTheRestIsSwept() throws Exception {
+        FragmentContentStore beforeRestart = contentStore(Duration.ofMinutes(30));
+        String adoptedId = beforeRestart.publish(splitContent(beforeRestart), UUID.randomUUID()).getId();
+        String orphanId = splitContent(beforeRestart).getId();
+
+        FragmentContentStore contentStore = contentStore(Duration.ZERO);
+        UUID userId = UUID.randomUUID();
+        FragmentContent adopted = contentStore.adopt(session(userId, adoptedId));
+        Thread.sleep(5);
+        contentStore.deleteOrphans();
+
+        assertEquals(KEY, adopted.getKey());
+        assertEquals(Set.of(userId), adopted.getOwners());
+        assertTrue(Files.exists(contentStore.getPackFile(adoptedId)));
+        assertFalse(Files.exists(contentStore.getPackFile(orphanId)));
+        // new uploads of the key reuse the adopted content
+        assertSame(adopted, contentStore.acquire(KEY, UUID.randomUUID()).orElseThrow());
+    }
+
+    @Test
+    void qualityOnlyChangesTheKeyOfLossyFormats() {
+        FragmentContentStore contentStore = contentStore(Duration.ofMinutes(30));
+        MockMultipartFile image = new MockMultipartFile("image", new byte[]{1, 2, 3});
+
+        assertEquals(contentStore.getKey(image, new SplitOptions(5, 4, FragmentFormat.PNG, 0.5f)),
+                contentStore.getKey(image, new SplitOptions(5, 4, FragmentFormat.PNG, 0.9f)));
+        assertEquals(contentStore.getKey(image, new SplitOptions(5, 4, FragmentFormat.BMP, 0.5f)),
+                contentStore.getKey(image, new SplitOptions(5, 4, FragmentFormat.BMP, 0.9f)));
+        assertNotEquals(contentStore.getKey(image, new SplitOptions(5, 4, FragmentFormat.JPEG, 0.5f)),
+                contentStore.getKey(image, new SplitOptions(5, 4, FragmentFormat.JPEG, 0.9f)));
+        assertNotEquals(contentStore.getKey(image, new SplitOptions(5, 4, FragmentFormat.PNG, 0.5f)),
+                contentStore.getKey(image, new SplitOptions(5, 4, FragmentFormat.BMP, 0.5f)));
+    }
+}
@@ -0,0 +1,72 @@
+package com.projects.puzzles.service;
+
+import com.projects.puzzles.utility.TestPuzzleConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FragmentImageCacheTest {
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final FragmentImageCache fragmentImageCache = new FragmentImageCache(
+            TestPuzzleConfig.builder().fragmentCacheSize(DataSize.ofBytes(10)).build(), meterRegistry);
+
+    private double count(String name, String result) {
+        return result == null
+                ? meterRegistry.get(name).counter().count()
+                : meterRegistry.get(name).tag("result", result).counter().count();
+    }
+
+    @Test
+    void leastRecentlyUsedFragmentsAreEvictedToStayWithinTheBudget() {
+        fragmentImageCache.put("a", 0, new byte[4]);
+        fragmentImageCache.put("a", 1, new byte[4]);
+        // reading the first fragment makes the second one the least recently used
+        assertTrue(fragmentImageCache.get("a", 0).isPresent());
+        fragmentImageCache.put("a", 2, new byte[4]);
+
+        assertTrue(fragmentImageCache.get("a", 0).isPresent());
+        assertTrue(fragmentImageCache.get("a", 1).isEmpty());
+        assertTrue(fragmentImageCache.get("a", 2).isPresent());
+        assertEquals(8, fragmentImageCache.getCurrentBytes());
+
+        // replacing a fragment only counts its new size
+        fragmentImageCache.put("a", 2, new byte[6]);
+        assertEquals(10, fragmentImageCache.getCurrentBytes());
+        fragmentImageCache.put("b", 0, new byte[10]);
+        assertEquals(10, fragmentImageCache.getCurrentBytes());
+        assertTrue(fragmentImageCache.get("a", 0).isEmpty());
+        assertTrue(fragmentImageCache.get("a", 2).isEmpty());
+
+        assertEquals(3, count("puzzle.fragment.cache.evictions", null));
+        assertEquals(3, count("puzzle.fragment.cache.requests", "hit"));
+        assertEquals(3, count("puzzle.fragment.cache.requests", "miss"));
+    }
+
+    @Test
+    void fragmentsLargerThanTheBudgetAreNotCached() {
+        fragmentImageCache.put("a", 0, new byte[4]);
+        fragmentImageCache.put("a", 1, new byte[11]);
+
+        assertTrue(fragmentImageCache.get("a", 1).isEmpty());
+        assertTrue(fragmentImageCache.get("a", 0).isPresent());
+        assertEquals(4, fragmentImageCache.getCurrentBytes());
+        assertEquals(0, count("puzzle.fragment.cache.evictions", null));
+    }
+
+    @Test
+    void evictingAContentOnlyDropsItsFragments() {
+        fragmentImageCache.put("a", 0, new byte[3]);
+        fragmentImageCache.put("b", 0, new byte[3]);
+        fragmentImageCache.put("a", 1, new byte[3]);
+
+        fragmentImageCache.evict("a");
+
+        assertTrue(fragmentImageCache.get("a", 0).isEmpty());
+        assertTrue(fragmentImageCache.get("a", 1).isEmpty());
+        assertTrue(fragmentImageCache.get("b", 0).isPresent());
+        assertEquals(3, fragmentImageCache.getCurrentBytes());
+    }
+}
@@ -0,0 +1,36 @@
+package com.projects.puzzles.service;
+
+import com.projects.puzzles.utility.FragmentFormat;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class FragmentImageWriterTest {
+    private final FragmentImageWriter fragmentImageWriter = new FragmentImageWriter();
+
+    @ParameterizedTest
+    @EnumSource(value = FragmentFormat.class, names = {"JPEG", "PNG", "BMP"})
+    void imagesWithAnAlphaChannelAreEncodedInEveryFormat(FragmentFormat format) throws Exception {
+        BufferedImage image = new BufferedImage(16, 16, BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < 16; y++) {
+            for (int x = 0; x < 16; x++) {
+                // opaque white on the left half, fully transparent white on the right half
+                image.setRGB(x, y, x < 8 ? 0xFFFFFFFF : 0x00FFFFFF);
+            }
+        }
+
+        BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(fragmentImageWriter.encode(image, format, 1f)));
+
+        assertEquals(16, decoded.getWidth());
+        assertEquals(16, decoded.getHeight());
+        assertEquals(0xFF, decoded.getRGB(2, 8) & 0xFF);
+        if (!format.isAlpha()) {
+            assertEquals(0, decoded.getRGB(13, 8) & 0xFF);
+        }
+    }
+}
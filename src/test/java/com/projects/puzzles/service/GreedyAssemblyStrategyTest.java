@@ -0,0 +1,82 @@
+package com.projects.puzzles.service;
+
+import com.projects.puzzles.utility.Adjacent;
+import com.projects.puzzles.utility.DissimilarityMatrix;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+class GreedyAssemblyStrategyTest {
+    private final GreedyAssemblyStrategy greedyAssemblyStrategy = new GreedyAssemblyStrategy(new SimpleMeterRegistry());
+
+    private static int[] shuffledSolution(int size, Random random) {
+        List<Integer> ids = new ArrayList<>(IntStream.range(0, size).boxed().toList());
+        Collections.shuffle(ids, random);
+        return ids.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private static DissimilarityMatrix matrixOf(int[] solution, int columns, float noise, Random random) {
+        int size = solution.length;
+        DissimilarityMatrix dissimilarityMatrix = new DissimilarityMatrix(size);
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                if (i != j) {
+                    dissimilarityMatrix.set(Adjacent.RIGHT, i, j, noise + random.nextFloat());
+                    dissimilarityMatrix.set(Adjacent.BOTTOM, i, j, noise + random.nextFloat());
+                }
+            }
+        }
+        for (int cell = 0; cell < size; cell++) {
+            if (cell % columns < columns - 1) {
+                dissimilarityMatrix.set(Adjacent.RIGHT, solution[cell], solution[cell + 1], random.nextFloat() * noise);
+            }
+            if (cell + columns < size) {
+                dissimilarityMatrix.set(Adjacent.BOTTOM, solution[cell], solution[cell + columns], random.nextFloat() * noise);
+            }
+        }
+        return dissimilarityMatrix;
+    }
+
+    @Test
+    void assemblesDistinctFragments() {
+        Random random = new Random(7);
+        int columns = 12;
+        int rows = 9;
+        int[] solution = shuffledSolution(columns * rows, random);
+
+        int[] placement = greedyAssemblyStrategy.assemble(matrixOf(solution, columns, 0.1f, random), columns, rows);
+
+        assertArrayEquals(solution, placement);
+    }
+
+    @Test
+    void alwaysPlacesEveryFragmentWhenEdgesAreAmbiguous() {
+        Random random = new Random(11);
+        int columns = 6;
+        int rows = 5;
+        int size = columns * rows;
+        DissimilarityMatrix dissimilarityMatrix = new DissimilarityMatrix(size);
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                if (i != j) {
+                    dissimilarityMatrix.set(Adjacent.RIGHT, i, j, 0);
+                    dissimilarityMatrix.set(Adjacent.BOTTOM, i, j, random.nextInt(2) * 0.01f);
+                }
+            }
+        }
+
+        int[] placement = greedyAssemblyStrategy.assemble(dissimilarityMatrix, columns, rows);
+
+        int[] sorted = placement.clone();
+        Arrays.sort(sorted);
+        assertArrayEquals(IntStream.range(0, size).toArray(), sorted);
+    }
+}
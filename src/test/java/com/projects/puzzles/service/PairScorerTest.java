@@ -0,0 +1,125 @@
+package com.projects.puzzles.service;
+
+import com.projects.puzzles.utility.Adjacent;
+import com.projects.puzzles.utility.DissimilarityMatrix;
+import com.projects.puzzles.utility.EdgeStore;
+import com.projects.puzzles.utility.FragmentEdges;
+import com.projects.puzzles.utility.PuzzleConfig;
+import com.projects.puzzles.utility.TestPuzzleConfig;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PairScorerTest {
+    private static final int COLUMNS = 12;
+    private static final int ROWS = 10;
+    private static final int FRAGMENT_WIDTH = 24;
+    private static final int FRAGMENT_HEIGHT = 20;
+
+    private final ForkJoinPool scoringPool = new ForkJoinPool(2);
+
+    private static PuzzleConfig puzzleConfig(int candidatesPerSide) {
+        return TestPuzzleConfig.builder()
+                .numPuzzlesX(COLUMNS)
+                .numPuzzlesY(ROWS)
+                .scoringParallelism(2)
+                .candidatesPerSide(candidatesPerSide)
+                .build();
+    }
+
+    // Bilinear interpolation of a coarse random grid, so that neighbouring pixels differ only a little
+    private static BufferedImage smoothImage(Random random, int width, int height, int cellSize) {
+        int gridWidth = width / cellSize + 2;
+        int gridHeight = height / cellSize + 2;
+        int[][] grid = new int[gridHeight][gridWidth];
+        for (int[] row : grid) {
+            for (int x = 0; x < gridWidth; x++) {
+                row[x] = random.nextInt(0x1000000);
+            }
+        }
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int gx = x / cellSize;
+                int gy = y / cellSize;
+                double fx = (double) (x % cellSize) / cellSize;
+                double fy = (double) (y % cellSize) / cellSize;
+                int rgb = 0;
+                for (int shift = 0; shift <= 16; shift += 8) {
+                    double top = channel(grid[gy][gx], shift) * (1 - fx) + channel(grid[gy][gx + 1], shift) * fx;
+                    double bottom = channel(grid[gy + 1][gx], shift) * (1 - fx) + channel(grid[gy + 1][gx + 1], shift) * fx;
+                    rgb |= (int) Math.round(top * (1 - fy) + bottom * fy) << shift;
+                }
+                image.setRGB(x, y, rgb);
+            }
+        }
+        return image;
+    }
+
+    private static int channel(int rgb, int shift) {
+        return (rgb >> shift) & 0xFF;
+    }
+
+    private static EdgeStore edgeStoreOf(BufferedImage image) {
+        EdgeStore edgeStore = new EdgeStore(COLUMNS * ROWS, FRAGMENT_WIDTH, FRAGMENT_HEIGHT);
+        for (int position = 0; position < COLUMNS * ROWS; position++) {
+            edgeStore.put(position, FragmentEdges.of(image.getSubimage(position % COLUMNS * FRAGMENT_WIDTH,
+                    position / COLUMNS * FRAGMENT_HEIGHT, FRAGMENT_WIDTH, FRAGMENT_HEIGHT)));
+        }
+        return edgeStore;
+    }
+
+    private PairScorer pairScorer(PuzzleConfig puzzleConfig, MeterRegistry meterRegistry) {
+        PuzzleMetrics puzzleMetrics = new PuzzleMetrics(puzzleConfig, meterRegistry,
+                new InMemoryPuzzleSessionStore(puzzleConfig, event -> {
+                }));
+        return new PairScorer(puzzleConfig, new EdgeComparator(puzzleConfig), scoringPool, puzzleMetrics);
+    }
+
+    @AfterEach
+    void tearDown() {
+        scoringPool.shutdown();
+    }
+
+    @Test
+    void prunedScoringKeepsTrueNeighboursOfExhaustiveScoring() {
+        EdgeStore edgeStore = edgeStoreOf(smoothImage(new Random(3), COLUMNS * FRAGMENT_WIDTH,
+                ROWS * FRAGMENT_HEIGHT, 32));
+        int size = COLUMNS * ROWS;
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+        DissimilarityMatrix exhaustive = pairScorer(puzzleConfig(0), new SimpleMeterRegistry())
+                .score(edgeStore, size, false);
+        DissimilarityMatrix pruned = pairScorer(puzzleConfig(4), meterRegistry).score(edgeStore, size, false);
+
+        for (int position = 0; position < size; position++) {
+            if (position % COLUMNS < COLUMNS - 1) {
+                assertEquals(exhaustive.get(Adjacent.RIGHT, position, position + 1),
+                        pruned.get(Adjacent.RIGHT, position, position + 1));
+            }
+            if (position + COLUMNS < size) {
+                assertEquals(exhaustive.get(Adjacent.BOTTOM, position, position + COLUMNS),
+                        pruned.get(Adjacent.BOTTOM, position, position + COLUMNS));
+            }
+        }
+        for (Adjacent side : Adjacent.values()) {
+            int[] exhaustiveMatches = exhaustive.bestMatches(side);
+            int[] prunedMatches = pruned.bestMatches(side);
+            for (int position = 0; position < size; position++) {
+                if (exhaustive.get(side, position, exhaustiveMatches[position]) <= 0.14) {
+                    assertEquals(exhaustiveMatches[position], prunedMatches[position]);
+                }
+            }
+        }
+        double comparisons = meterRegistry.get("puzzle.edge.comparisons").tag("pipeline", "assemble").counter().count();
+        assertTrue(comparisons < (double) size * (size - 1) / 2 * Adjacent.values().length / 2);
+    }
+}
@@ -0,0 +1,269 @@
+package com.projects.puzzles.service;
+
+import com.projects.puzzles.dto.MoveDto;
+import com.projects.puzzles.dto.PuzzleCheckDto;
+import com.projects.puzzles.dto.UploadDto;
+import com.projects.puzzles.model.FragmentContent;
+import com.projects.puzzles.model.FragmentImage;
+import com.projects.puzzles.model.PuzzleSession;
+import com.projects.puzzles.utility.CheckMode;
+import com.projects.puzzles.utility.FragmentFormat;
+import com.projects.puzzles.utility.PuzzleBoard;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+
+// small enough that uploads are decoded one row of fragments at a time, and large ones are subsampled
+@SpringBootTest(properties = {"puzzle.session-store=FILE", "puzzle.warm-up-iterations=0",
+        "puzzle.split-memory-budget=1KB", "puzzle.max-image-side=256"})
+class PuzzleServiceTest {
+    @TempDir
+    static Path directory;
+
+    @Autowired
+    private PuzzleService puzzleService;
+
+    @SpyBean
+    private PuzzleSessionStore puzzleSessionStore;
+
+    @DynamicPropertySource
+    static void puzzleProperties(DynamicPropertyRegistry registry) {
+        registry.add("puzzle.path-to-puzzle-images-directory", () -> directory + "/");
+    }
+
+    private static BufferedImage bufferedImage(int width, int height) {
+        Random random = new Random(width * 31L + height);
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, (x * 255 / width) << 16 | (y * 255 / height) << 8 | random.nextInt(32));
+            }
+        }
+        return image;
+    }
+
+    private static MockMultipartFile image(BufferedImage image) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", bytes);
+        return new MockMultipartFile("image", "image.png", "image/png", bytes.toByteArray());
+    }
+
+    static MockMultipartFile image(int width, int height) throws Exception {
+        return image(bufferedImage(width, height));
+    }
+
+    private UUID upload() throws Exception {
+        UUID userId = UUID.randomUUID();
+        puzzleService.divideIntoPuzzles(userId, image(200, 160), UploadDto.builder().build());
+        return userId;
+    }
+
+    private int getCell(UUID userId, int fragmentId) {
+        return puzzleSessionStore.get(userId).orElseThrow().getBoard().getPosition(fragmentId);
+    }
+
+    @Test
+    void moveRacingAResetIsNotFoundAndDoesNotBringTheSessionBack() throws Exception {
+        UUID userId = upload();
+        doAnswer(invocation -> {
+            puzzleService.resetPuzzles(userId);
+            return invocation.callRealMethod();
+        }).when(puzzleSessionStore).update(eq(userId), anyLong(), any());
+
+        ResponseStatusException exception = assertThrows(ResponseStatusException.class,
+                () -> puzzleService.movePuzzle(userId, new MoveDto(0, 1, 0)));
+        assertEquals(HttpStatus.NOT_FOUND, exception.getStatusCode());
+        assertTrue(puzzleSessionStore.get(userId).isEmpty());
+    }
+
+    @Test
+    void concurrentMovesAreNeitherLostNorAppliedToAStaleBoard() throws Exception {
+        UUID userId = upload();
+        AtomicBoolean raced = new AtomicBoolean();
+        // the first move reads the board, then another move is stored before the first one is
+        doAnswer(invocation -> {
+            if (raced.compareAndSet(false, true)) {
+                puzzleService.movePuzzle(userId, new MoveDto(2, 3, 0));
+            }
+            return invocation.callRealMethod();
+        }).when(puzzleSessionStore).update(eq(userId), anyLong(), any());
+
+        ResponseStatusException exception = assertThrows(ResponseStatusException.class,
+                () -> puzzleService.movePuzzle(userId, new MoveDto(0, 1, 0)));
+        assertEquals(HttpStatus.CONFLICT, exception.getStatusCode());
+        assertEquals(3, getCell(userId, 2));
+        assertEquals(0, getCell(userId, 0));
+
+        puzzleService.movePuzzle(userId, new MoveDto(0, 1, 0));
+        assertEquals(1, getCell(userId, 0));
+        assertEquals(3, getCell(userId, 2));
+    }
+
+    @Test
+    void failedUploadKeepsThePreviousSession() throws Exception {
+        UUID userId = upload();
+        long revision = puzzleSessionStore.get(userId).orElseThrow().getRevision();
+
+        MockMultipartFile notAnImage = new MockMultipartFile("image", "image.png", "image/png", new byte[]{1, 2, 3});
+        assertThrows(RuntimeException.class,
+                () -> puzzleService.divideIntoPuzzles(userId, notAnImage, UploadDto.builder().build()));
+
+        assertEquals(revision, puzzleSessionStore.get(userId).orElseThrow().getRevision());
+        assertTrue(Files.exists(directory.resolve(userId + "/session.bin")));
+        assertEquals(20, puzzleService.getPuzzles(userId).size());
+    }
+
+    @Test
+    void failedUploadReleasesTheContentItShares() throws Exception {
+        UUID owner = UUID.randomUUID();
+        puzzleService.divideIntoPuzzles(owner, image(240, 200), UploadDto.builder().build());
+        String contentId = puzzleSessionStore.get(owner).orElseThrow().getContentId();
+        UUID userId = UUID.randomUUID();
+        doThrow(new IllegalStateException("disk full")).when(puzzleSessionStore).put(argThat(session ->
+                session.getUserId().equals(userId)));
+
+        assertThrows(IllegalStateException.class,
+                () -> puzzleService.divideIntoPuzzles(userId, image(240, 200), UploadDto.builder().build()));
+        puzzleService.resetPuzzles(owner);
+
+        assertFalse(Files.exists(directory.resolve(FragmentContent.getPackName(contentId))));
+    }
+
+    // The solved board as the client would submit it, scaled and shifted on the page
+    private List<PuzzleCheckDto> solvedBoard(UUID userId, int offset, float scale) {
+        PuzzleSession session = puzzleSessionStore.get(userId).orElseThrow();
+        PuzzleBoard board = session.getBoard();
+        int width = Math.round(session.getFragmentWidth() * scale);
+        int height = Math.round(session.getFragmentHeight() * scale);
+        List<PuzzleCheckDto> puzzles = new ArrayList<>();
+        for (int position = 0; position < board.getSolution().length; position++) {
+            puzzles.add(new PuzzleCheckDto(board.getSolution()[position],
+                    offset + position % board.getColumns() * width, offset + position / board.getColumns() * height,
+                    width, height));
+        }
+        return puzzles;
+    }
+
+    private boolean checkExact(UUID userId, List<PuzzleCheckDto> puzzles) {
+        return puzzleService.checkPuzzles(userId, puzzles, CheckMode.EXACT, false);
+    }
+
+    @Test
+    void exactCheckAcceptsTheSolvedBoardWhereverItIsShown() throws Exception {
+        UUID userId = upload();
+
+        assertTrue(checkExact(userId, solvedBoard(userId, 0, 1)));
+        assertTrue(checkExact(userId, solvedBoard(userId, 37, 1)));
+        assertTrue(checkExact(userId, solvedBoard(userId, 5, 0.6f)));
+
+        List<PuzzleCheckDto> swapped = solvedBoard(userId, 0, 1);
+        PuzzleCheckDto first = swapped.get(0);
+        PuzzleCheckDto second = swapped.get(1);
+        swapped.set(0, new PuzzleCheckDto(second.id(), first.x(), first.y(), first.width(), first.height()));
+        swapped.set(1, new PuzzleCheckDto(first.id(), second.x(), second.y(), second.width(), second.height()));
+        assertFalse(checkExact(userId, swapped));
+        assertFalse(checkExact(userId, solvedBoard(userId, 0, 1).subList(1, 20)));
+    }
+
+    @Test
+    void exactCheckHandlesGridsOfASingleColumnOrRow() throws Exception {
+        UUID column = UUID.randomUUID();
+        puzzleService.divideIntoPuzzles(column, image(200, 160), UploadDto.builder().columns(1).rows(4).build());
+        UUID row = UUID.randomUUID();
+        puzzleService.divideIntoPuzzles(row, image(200, 160), UploadDto.builder().columns(5).rows(1).build());
+
+        assertTrue(checkExact(column, solvedBoard(column, 12, 1)));
+        assertTrue(checkExact(row, solvedBoard(row, 12, 1)));
+        List<PuzzleCheckDto> solved = solvedBoard(column, 0, 1);
+        assertFalse(checkExact(column, IntStream.range(0, solved.size())
+                .mapToObj(i -> new PuzzleCheckDto(solved.get(solved.size() - 1 - i).id(), 0, i * 40, 200, 40))
+                .toList()));
+    }
+
+    @Test
+    void exactCheckRejectsPiecesStackedOnOneCell() throws Exception {
+        UUID userId = upload();
+        List<PuzzleCheckDto> stacked = solvedBoard(userId, 0, 1);
+        // the same piece twice, in place of one that is left out
+        stacked.set(7, stacked.get(6));
+
+        assertFalse(checkExact(userId, stacked));
+        // every piece on the board, but two of them share a cell and one cell stays empty
+        List<PuzzleCheckDto> shared = solvedBoard(userId, 0, 1);
+        PuzzleCheckDto neighbour = shared.get(6);
+        shared.set(7, new PuzzleCheckDto(shared.get(7).id(), neighbour.x(), neighbour.y(), 40, 40));
+        assertFalse(checkExact(userId, shared));
+    }
+
+    // Every fragment, decoded, against the same cell cut from the whole image subsampled as a whole
+    private void assertFragmentsOf(BufferedImage image, int subsampling, int columns, int rows) throws Exception {
+        UUID userId = UUID.randomUUID();
+        puzzleService.divideIntoPuzzles(userId, image(image),
+                UploadDto.builder().columns(columns).rows(rows).format(FragmentFormat.PNG).build());
+        PuzzleSession session = puzzleSessionStore.get(userId).orElseThrow();
+        int width = session.getFragmentWidth();
+        int height = session.getFragmentHeight();
+        assertEquals(image.getWidth() / subsampling / columns, width);
+        assertEquals(image.getHeight() / subsampling / rows, height);
+
+        for (int position = 0; position < columns * rows; position++) {
+            FragmentImage fragmentImage = puzzleService.getPuzzleImage(userId,
+                    session.getBoard().getSolution()[position]);
+            BufferedImage fragment;
+            try (InputStream inputStream = fragmentImage.resource().getInputStream()) {
+                fragment = ImageIO.read(inputStream);
+            }
+            assertEquals(width, fragment.getWidth());
+            assertEquals(height, fragment.getHeight());
+            int left = position % columns * width;
+            int top = position / columns * height;
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    assertEquals(image.getRGB((left + x) * subsampling, (top + y) * subsampling),
+                            fragment.getRGB(x, y), "position " + position + " pixel " + x + "," + y);
+                }
+            }
+        }
+    }
+
+    @Test
+    void bandsAreSplitLikeTheWholeImage() throws Exception {
+        assertFragmentsOf(bufferedImage(203, 167), 1, 5, 4);
+    }
+
+    @Test
+    void imagesLargerThanTheMaximumSideAreSubsampled() throws Exception {
+        assertFragmentsOf(bufferedImage(620, 410), 3, 5, 4);
+    }
+}
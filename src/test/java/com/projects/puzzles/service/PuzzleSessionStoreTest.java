@@ -0,0 +1,100 @@
+package com.projects.puzzles.service;
+
+import com.projects.puzzles.model.PuzzleSession;
+import com.projects.puzzles.model.PuzzleSessionExpiredEvent;
+import com.projects.puzzles.utility.FragmentFormat;
+import com.projects.puzzles.utility.PuzzleBoard;
+import com.projects.puzzles.utility.PuzzleConfig;
+import com.projects.puzzles.utility.TestPuzzleConfig;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PuzzleSessionStoreTest {
+    @TempDir
+    Path directory;
+
+    private PuzzleSessionStore sessionStore(boolean file) {
+        PuzzleConfig puzzleConfig = TestPuzzleConfig.builder()
+                .pathToPuzzleImagesDirectory(directory + "/")
+                .build();
+        return file
+                ? new FilePuzzleSessionStore(puzzleConfig, event -> {
+                })
+                : new InMemoryPuzzleSessionStore(puzzleConfig, event -> {
+                });
+    }
+
+    private PuzzleSession newSession(UUID userId) throws Exception {
+        Files.createDirectories(directory.resolve(userId.toString()));
+        return new PuzzleSession(userId, "0123abcd-1", 8, 8, FragmentFormat.JPEG,
+                new PuzzleBoard(2, 2, new int[]{3, 1, 0, 2}));
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void updateIsDroppedOnceTheSessionWasPutAgain(boolean file) throws Exception {
+        PuzzleSessionStore sessionStore = sessionStore(file);
+        UUID userId = UUID.randomUUID();
+        sessionStore.put(newSession(userId));
+        PuzzleSession read = sessionStore.get(userId).orElseThrow();
+        long revision = read.getRevision();
+
+        read.getBoard().move(0, 1, 1);
+        sessionStore.put(read);
+
+        assertTrue(sessionStore.update(userId, revision, session -> session.getBoard().move(0, 0, 0)).isEmpty());
+        assertArrayEquals(read.getBoard().getPlacement(), sessionStore.get(userId).orElseThrow().getBoard().getPlacement());
+        long current = sessionStore.get(userId).orElseThrow().getRevision();
+        assertTrue(sessionStore.update(userId, current, session -> session.getBoard().move(0, 0, 0)).isPresent());
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void updateDoesNotBringBackRemovedOrReplacedSessions(boolean file) throws Exception {
+        PuzzleSessionStore sessionStore = sessionStore(file);
+        UUID userId = UUID.randomUUID();
+        sessionStore.put(newSession(userId));
+        long revision = sessionStore.get(userId).orElseThrow().getRevision();
+
+        sessionStore.remove(userId);
+        assertTrue(sessionStore.update(userId, revision, session -> {
+        }).isEmpty());
+        assertTrue(sessionStore.get(userId).isEmpty());
+
+        sessionStore.put(newSession(userId));
+        assertTrue(sessionStore.update(userId, revision, session -> {
+        }).isEmpty());
+    }
+
+    @Test
+    void sessionsOfAnOlderFormatAreTreatedAsMissingAndExpire() throws Exception {
+        UUID userId = UUID.randomUUID();
+        Files.createDirectories(directory.resolve(userId.toString()));
+        Files.write(directory.resolve(userId + "/session.bin"), ByteBuffer.allocate(64).putInt(5).array());
+        List<Object> events = new ArrayList<>();
+        FilePuzzleSessionStore sessionStore = new FilePuzzleSessionStore(TestPuzzleConfig.builder()
+                .pathToPuzzleImagesDirectory(directory + "/")
+                .build(), events::add);
+        sessionStore.loadSessions();
+
+        assertTrue(sessionStore.get(userId).isEmpty());
+        sessionStore.evictExpiredSessions();
+        assertEquals(List.of(new PuzzleSessionExpiredEvent(userId)), events);
+
+        sessionStore.put(newSession(userId));
+        assertTrue(sessionStore.get(userId).isPresent());
+    }
+}
@@ -0,0 +1,48 @@
+package com.projects.puzzles.utility;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class DissimilarityMatrixTest {
+    private static final int SIZE = 23;
+
+    private static int[] referenceBestMatches(DissimilarityMatrix dissimilarityMatrix, Adjacent side) {
+        int[] bestMatches = new int[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            int best = -1;
+            for (int j = 0; j < SIZE; j++) {
+                if (j != i && (best == -1 || dissimilarityMatrix.get(side, i, j) < dissimilarityMatrix.get(side, i, best))) {
+                    best = j;
+                }
+            }
+            bestMatches[i] = best;
+        }
+        return bestMatches;
+    }
+
+    @Test
+    void oppositeSidesReadTheSameValuesTransposed() {
+        Random random = new Random(11);
+        DissimilarityMatrix dissimilarityMatrix = new DissimilarityMatrix(SIZE);
+        for (int i = 0; i < SIZE; i++) {
+            for (int j = 0; j < SIZE; j++) {
+                // few distinct values, so that ties have to be broken the same way on every side
+                dissimilarityMatrix.set(Adjacent.RIGHT, i, j, random.nextInt(8) / 8f);
+                dissimilarityMatrix.set(Adjacent.TOP, i, j, random.nextInt(8) / 8f);
+            }
+        }
+
+        for (Adjacent side : Adjacent.values()) {
+            for (int i = 0; i < SIZE; i++) {
+                for (int j = 0; j < SIZE; j++) {
+                    assertEquals(dissimilarityMatrix.get(side, i, j), dissimilarityMatrix.get(side.opposite(), j, i));
+                }
+            }
+            assertArrayEquals(referenceBestMatches(dissimilarityMatrix, side), dissimilarityMatrix.bestMatches(side));
+        }
+    }
+}
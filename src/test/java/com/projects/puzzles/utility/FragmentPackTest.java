@@ -0,0 +1,64 @@
+package com.projects.puzzles.utility;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class FragmentPackTest {
+    @TempDir
+    Path directory;
+
+    private static byte[][] randomFragments(Random random, int count) {
+        byte[][] fragments = new byte[count][];
+        for (int i = 0; i < count; i++) {
+            fragments[i] = new byte[1 + random.nextInt(5000)];
+            random.nextBytes(fragments[i]);
+        }
+        return fragments;
+    }
+
+    @Test
+    void readsFragmentsWrittenConcurrentlyInAnyOrder() throws Exception {
+        byte[][] fragments = randomFragments(new Random(5), 200);
+        Path file = directory.resolve("content.pack");
+        try (FragmentPackWriter packWriter = new FragmentPackWriter(file, fragments.length)) {
+            IntStream.range(0, fragments.length).parallel()
+                    .forEach(position -> packWriter.write(position, fragments[position]));
+            packWriter.finish();
+        }
+
+        FragmentPack pack = FragmentPack.open(file);
+
+        assertEquals(fragments.length, pack.getFragmentCount());
+        for (int position = 0; position < fragments.length; position++) {
+            assertEquals(fragments[position].length, pack.getLength(position));
+            assertArrayEquals(fragments[position], pack.read(position));
+            ByteBufferResource resource = new ByteBufferResource(pack.slice(position), "fragment " + position);
+            assertEquals(fragments[position].length, resource.contentLength());
+            assertArrayEquals(fragments[position], resource.getInputStream().readAllBytes());
+        }
+    }
+
+    @Test
+    void rejectsUnfinishedPacks() throws Exception {
+        byte[][] fragments = randomFragments(new Random(9), 3);
+        Path file = directory.resolve("unfinished.pack");
+        try (FragmentPackWriter packWriter = new FragmentPackWriter(file, fragments.length)) {
+            for (int position = 0; position < fragments.length; position++) {
+                packWriter.write(position, fragments[position]);
+            }
+        }
+
+        assertThrows(RuntimeException.class, () -> FragmentPack.open(file));
+        Files.write(file, new byte[4]);
+        assertThrows(RuntimeException.class, () -> FragmentPack.open(file));
+    }
+}
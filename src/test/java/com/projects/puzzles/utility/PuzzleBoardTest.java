@@ -0,0 +1,68 @@
+package com.projects.puzzles.utility;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PuzzleBoardTest {
+    private static final int COLUMNS = 7;
+    private static final int ROWS = 5;
+
+    private static int[] shuffledSolution(Random random) {
+        int[] solution = new int[COLUMNS * ROWS];
+        for (int i = 0; i < solution.length; i++) {
+            solution[i] = i;
+        }
+        for (int i = solution.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swap = solution[i];
+            solution[i] = solution[j];
+            solution[j] = swap;
+        }
+        return solution;
+    }
+
+    private static int[] cells(PuzzleBoard board) {
+        int[] cells = new int[COLUMNS * ROWS];
+        for (int position = 0; position < cells.length; position++) {
+            cells[position] = board.getFragment(position);
+        }
+        return cells;
+    }
+
+    @Test
+    void incrementalMovesKeepTheSameEdgeCountAsAFullRecount() {
+        Random random = new Random(3);
+        int[] solution = shuffledSolution(random);
+        PuzzleBoard board = new PuzzleBoard(COLUMNS, ROWS, solution);
+
+        for (int move = 0; move < 500; move++) {
+            int correctBefore = board.getCorrectEdges();
+            int changedEdges = board.move(random.nextInt(solution.length),
+                    random.nextInt(COLUMNS), random.nextInt(ROWS)).size();
+
+            PuzzleBoard recounted = new PuzzleBoard(COLUMNS, ROWS, solution);
+            recounted.setPlacement(cells(board));
+            assertEquals(recounted.getCorrectEdges(), board.getCorrectEdges());
+            assertTrue(Math.abs(board.getCorrectEdges() - correctBefore) <= changedEdges);
+        }
+    }
+
+    @Test
+    void movingEveryFragmentToItsCellSolvesTheBoard() {
+        int[] solution = shuffledSolution(new Random(11));
+        PuzzleBoard board = new PuzzleBoard(COLUMNS, ROWS, solution);
+        assertFalse(board.isSolved());
+
+        for (int position = 0; position < solution.length; position++) {
+            board.move(solution[position], position % COLUMNS, position / COLUMNS);
+        }
+
+        assertEquals(board.getTotalEdges(), board.getCorrectEdges());
+        assertTrue(board.isSolved());
+    }
+}
@@ -0,0 +1,40 @@
+package com.projects.puzzles.utility;
+
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+// Defaults of application.yaml, so that tests only spell out the settings they depend on
+public final class TestPuzzleConfig {
+    private TestPuzzleConfig() {
+    }
+
+    public static PuzzleConfig.PuzzleConfigBuilder builder() {
+        return PuzzleConfig.builder()
+                .numPuzzlesX(5)
+                .numPuzzlesY(4)
+                .colorThreshold(15)
+                .meanErrorProbabilityThreshold(0.14)
+                .pathToPuzzleImagesDirectory("./puzzles/")
+                .assemblyStrategy(AssemblyStrategyType.GREEDY)
+                .scoringParallelism(0)
+                .assemblyMaxConcurrency(2)
+                .assemblyQueueCapacity(16)
+                .splitMemoryBudget(DataSize.ofMegabytes(64))
+                .maxImageSide(4096)
+                .writeParallelism(0)
+                .fragmentCacheSize(DataSize.ofMegabytes(64))
+                .atlasEnabled(false)
+                .sessionStore(PuzzleSessionStoreType.MEMORY)
+                .sessionTimeout(Duration.ofMinutes(30))
+                .diagnosticsQueueCapacity(64)
+                .fragmentFormat(FragmentFormat.JPEG)
+                .jpegQuality(0.75f)
+                .maxGridSide(100)
+                .candidatesPerSide(16)
+                .candidateTolerance(0.14)
+                .warmUpIterations(0)
+                .exitAfterWarmUp(false)
+                .assemblyMemoryBudget(DataSize.ofMegabytes(256));
+    }
+}